@@ -24,16 +24,30 @@ repositories {
     mavenCentral()
 }
 
+val arrowVersion = "18.1.0"
+// Arrow обращается к адресам direct-буферов через reflection
+val arrowJvmArgs = listOf("--add-opens=java.base/java.nio=ALL-UNNAMED")
+
 dependencies {
     implementation("com.opencsv:opencsv:5.12.0")
+    implementation("org.apache.arrow:arrow-vector:$arrowVersion")
+    implementation("org.apache.arrow:arrow-compression:$arrowVersion")
+    runtimeOnly("org.apache.arrow:arrow-memory-unsafe:$arrowVersion")
+    implementation("org.springframework.boot:spring-boot-starter-actuator")
     implementation("org.springframework.boot:spring-boot-starter-data-jpa")
+    implementation("org.springframework.boot:spring-boot-starter-flyway")
+    implementation("org.flywaydb:flyway-database-postgresql")
+    // кэш второго уровня Hibernate: JCache поверх Caffeine, метрики попаданий в Micrometer
+    implementation("org.hibernate.orm:hibernate-jcache")
+    implementation("org.hibernate.orm:hibernate-micrometer")
+    implementation("com.github.ben-manes.caffeine:jcache")
     implementation("org.springframework.boot:spring-boot-starter-security")
     implementation("org.springframework.boot:spring-boot-starter-thymeleaf")
     implementation("org.springframework.boot:spring-boot-starter-validation")
     implementation("org.springframework.boot:spring-boot-starter-webmvc")
     implementation("org.thymeleaf.extras:thymeleaf-extras-springsecurity6")
     compileOnly("org.projectlombok:lombok")
-    runtimeOnly("org.postgresql:postgresql")
+    implementation("org.postgresql:postgresql")
     annotationProcessor("org.projectlombok:lombok")
     testImplementation("org.springframework.boot:spring-boot-starter-data-jpa-test")
     testImplementation("org.springframework.boot:spring-boot-starter-security-test")
@@ -45,4 +59,53 @@ dependencies {
 
 tasks.withType<Test> {
     useJUnitPlatform()
+    jvmArgs(arrowJvmArgs)
+}
+
+tasks.bootRun {
+    jvmArgs(arrowJvmArgs)
+}
+
+// java -jar берёт Add-Opens из манифеста
+tasks.bootJar {
+    manifest {
+        attributes("Add-Opens" to "java.base/java.nio")
+    }
+}
+
+tasks.test {
+    useJUnitPlatform {
+        excludeTags("benchmark", "queryplan")
+    }
+}
+
+// ./gradlew benchmark [-Pbench.rows=N] — замеры импорта, нужен локальный PostgreSQL
+tasks.register<Test>("benchmark") {
+    description = "Runs the import throughput benchmarks."
+    group = "verification"
+    testClassesDirs = sourceSets.test.get().output.classesDirs
+    classpath = sourceSets.test.get().runtimeClasspath
+    useJUnitPlatform {
+        includeTags("benchmark")
+    }
+    systemProperty("bench.rows", providers.gradleProperty("bench.rows").getOrElse("20000"))
+    testLogging {
+        showStandardStreams = true
+    }
+    outputs.upToDateWhen { false }
+}
+
+// ./gradlew queryPlans — EXPLAIN горячих запросов на засеянной базе, нужен локальный PostgreSQL
+tasks.register<Test>("queryPlans") {
+    description = "Checks that the hot repository queries are planned without sequential scans."
+    group = "verification"
+    testClassesDirs = sourceSets.test.get().output.classesDirs
+    classpath = sourceSets.test.get().runtimeClasspath
+    useJUnitPlatform {
+        includeTags("queryplan")
+    }
+    testLogging {
+        showStandardStreams = true
+    }
+    outputs.upToDateWhen { false }
 }
@@ -0,0 +1,60 @@
+package org.fin.walley.api;
+
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.*;
+import org.fin.walley.config.AppUserDetails;
+import org.fin.walley.config.CurrentUser;
+import org.fin.walley.domain.Budget;
+import org.fin.walley.domain.BudgetPeriod;
+import org.fin.walley.service.BudgetService;
+import org.springframework.web.bind.annotation.*;
+
+
+import java.math.BigDecimal;
+import java.util.List;
+
+
+@RestController
+@RequestMapping("/api/budgets")
+public class BudgetApiController {
+
+
+    private final BudgetService budgetService;
+
+
+    public BudgetApiController(BudgetService budgetService) {
+        this.budgetService = budgetService;
+    }
+
+
+    public record BudgetCreate(
+            @NotNull Long categoryId,
+            Long subcategoryId,
+            @NotNull BudgetPeriod period,
+            @NotNull @Positive @Digits(integer = 12, fraction = 2) BigDecimal limit,
+            @Min(1) @Max(100) Integer alertPercent
+    ) {}
+
+
+    // статус всех бюджетов за текущий период
+    @GetMapping
+    public List<BudgetService.BudgetStatus> status(@CurrentUser AppUserDetails me) {
+        return budgetService.statusForUser(me.getId());
+    }
+
+
+    @PostMapping
+    public Long create(@RequestBody @Valid BudgetCreate body, @CurrentUser AppUserDetails me) {
+        int alert = body.alertPercent() != null ? body.alertPercent() : 80;
+        Budget b = budgetService.create(me.getId(), body.categoryId(), body.subcategoryId(),
+                body.period(), body.limit(), alert);
+        return b.getId();
+    }
+
+
+    @DeleteMapping("/{id}")
+    public void delete(@PathVariable Long id, @CurrentUser AppUserDetails me) {
+        budgetService.delete(me.getId(), id);
+    }
+}
@@ -1,12 +1,17 @@
 package org.fin.walley.api;
 
+import org.fin.walley.config.AppUserDetails;
+import org.fin.walley.config.CurrentUser;
 import org.fin.walley.domain.TransactionType;
 import org.fin.walley.service.CategoryService;
+import org.fin.walley.service.DataVersionService;
 import org.fin.walley.service.SubcategoryService;
+import org.fin.walley.view.CategoryTreeView;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 
-import java.security.Principal;
 import java.util.List;
 
 
@@ -17,11 +22,15 @@ public class CategoryApiController {
 
     private final CategoryService categoryService;
     private final SubcategoryService subcategoryService;
+    private final DataVersionService versions;
 
 
-    public CategoryApiController(CategoryService categoryService, SubcategoryService subcategoryService) {
+    public CategoryApiController(CategoryService categoryService,
+                                 SubcategoryService subcategoryService,
+                                 DataVersionService versions) {
         this.categoryService = categoryService;
         this.subcategoryService = subcategoryService;
+        this.versions = versions;
     }
 
 
@@ -29,20 +38,45 @@ public class CategoryApiController {
     public record SubDto(Long id, String name) {}
 
 
+    /**
+     * Both types' categories with their subcategories in one response, so a client switching type or
+     * category needs no further requests. Tagged like the lists below.
+     */
+    @GetMapping("/categories/tree")
+    public ResponseEntity<CategoryTreeView> tree(@CurrentUser AppUserDetails me, WebRequest request) {
+        String etag = versions.etag(me.getId());
+        if (ConditionalGet.unchanged(request, etag)) return ConditionalGet.notModified(etag);
+
+        CategoryTreeView tree = categoryService.treeForUser(me.getId());
+        return ConditionalGet.ok(tree.version()).body(tree);
+    }
+
+
+    // оба списка тегируются версией данных пользователя: 304 без запроса в БД
     @GetMapping("/categories")
-    public List<CategoryDto> categories(@RequestParam TransactionType type, Principal principal) {
-        return categoryService.listForUserByType(principal.getName(), type)
+    public ResponseEntity<List<CategoryDto>> categories(@RequestParam TransactionType type,
+                                                        @CurrentUser AppUserDetails me,
+                                                        WebRequest request) {
+        String etag = versions.etag(me.getId());
+        if (ConditionalGet.unchanged(request, etag)) return ConditionalGet.notModified(etag);
+
+        return ConditionalGet.ok(etag).body(categoryService.listViewsForUserByType(me.getId(), type)
                 .stream()
-                .map(c -> new CategoryDto(c.getId(), c.getName()))
-                .toList();
+                .map(c -> new CategoryDto(c.id(), c.name()))
+                .toList());
     }
 
 
     @GetMapping("/categories/{categoryId}/subcategories")
-    public List<SubDto> subcategories(@PathVariable Long categoryId, Principal principal) {
-        return subcategoryService.listForCategory(principal.getName(), categoryId)
+    public ResponseEntity<List<SubDto>> subcategories(@PathVariable Long categoryId,
+                                                      @CurrentUser AppUserDetails me,
+                                                      WebRequest request) {
+        String etag = versions.etag(me.getId());
+        if (ConditionalGet.unchanged(request, etag)) return ConditionalGet.notModified(etag);
+
+        return ConditionalGet.ok(etag).body(subcategoryService.listViewsForCategory(me.getId(), categoryId)
                 .stream()
-                .map(s -> new SubDto(s.getId(), s.getName()))
-                .toList();
+                .map(s -> new SubDto(s.id(), s.name()))
+                .toList());
     }
 }
\ No newline at end of file
@@ -0,0 +1,39 @@
+package org.fin.walley.api;
+
+
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.context.request.WebRequest;
+
+
+/**
+ * Conditional GET on the per-user data version ({@code DataVersionService.etag}). Handlers compare the tag
+ * first and return {@link #notModified} before running any query; full responses carry the tag and
+ * {@link #REVALIDATE}, which replaces Spring Security's default {@code no-store} so browsers keep the body
+ * and send {@code If-None-Match} on the next poll.
+ */
+final class ConditionalGet {
+
+
+    static final CacheControl REVALIDATE = CacheControl.noCache().cachePrivate();
+
+
+    private ConditionalGet() {
+    }
+
+
+    static boolean unchanged(WebRequest request, String etag) {
+        return request.checkNotModified(etag);
+    }
+
+
+    static <T> ResponseEntity<T> notModified(String etag) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).cacheControl(REVALIDATE).build();
+    }
+
+
+    static ResponseEntity.BodyBuilder ok(String etag) {
+        return ResponseEntity.ok().eTag(etag).cacheControl(REVALIDATE);
+    }
+}
@@ -0,0 +1,66 @@
+package org.fin.walley.api;
+
+
+import org.fin.walley.service.ImportJobService;
+import org.fin.walley.view.ImportJobView;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+
+import java.net.URI;
+import java.security.Principal;
+import java.util.List;
+
+
+/**
+ * Status and cancellation of the caller's import jobs (uploads to any import endpoint, admin ones included).
+ */
+@RestController
+@RequestMapping("/api/import-jobs")
+public class ImportJobApiController {
+
+
+    private final ImportJobService jobs;
+
+
+    public ImportJobApiController(ImportJobService jobs) {
+        this.jobs = jobs;
+    }
+
+
+    /**
+     * 202 response for an upload endpoint: the job as queued, Location pointing at its status.
+     */
+    public static ResponseEntity<ImportJobView> accepted(ImportJobView job) {
+        URI status = ServletUriComponentsBuilder.fromCurrentContextPath()
+                .path("/api/import-jobs/{id}")
+                .buildAndExpand(job.id())
+                .toUri();
+        return ResponseEntity.accepted().location(status).body(job);
+    }
+
+
+    @GetMapping
+    public List<ImportJobView> list(Principal principal) {
+        return jobs.listForUser(principal.getName());
+    }
+
+
+    @GetMapping("/{id}")
+    public ImportJobView status(@PathVariable String id, Principal principal) {
+        return jobs.status(principal.getName(), id);
+    }
+
+
+    @PostMapping("/{id}/cancel")
+    public ImportJobView cancel(@PathVariable String id, Principal principal) {
+        return jobs.cancel(principal.getName(), id);
+    }
+
+
+    @DeleteMapping("/{id}")
+    public ImportJobView delete(@PathVariable String id, Principal principal) {
+        return jobs.cancel(principal.getName(), id);
+    }
+}
@@ -0,0 +1,66 @@
+package org.fin.walley.api;
+
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.*;
+import org.fin.walley.config.AppUserDetails;
+import org.fin.walley.config.CurrentUser;
+import org.fin.walley.domain.RecurrenceFrequency;
+import org.fin.walley.domain.RecurringTransaction;
+import org.fin.walley.domain.TransactionType;
+import org.fin.walley.service.RecurringTransactionService;
+import org.fin.walley.view.RecurringView;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.web.bind.annotation.*;
+
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+
+@RestController
+@RequestMapping("/api/recurring")
+public class RecurringApiController {
+
+
+    private final RecurringTransactionService recurringService;
+
+
+    public RecurringApiController(RecurringTransactionService recurringService) {
+        this.recurringService = recurringService;
+    }
+
+
+    public record RecurringCreate(
+            @NotNull TransactionType type,
+            @NotNull @Positive @Digits(integer = 12, fraction = 2) BigDecimal amount,
+            @NotNull Long categoryId,
+            Long subcategoryId,
+            @Size(max = 255) String note,
+            @NotNull RecurrenceFrequency frequency,
+            @NotNull @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate
+    ) {}
+
+
+    @GetMapping
+    public List<RecurringView> list(@CurrentUser AppUserDetails me) {
+        return recurringService.listForUser(me.getId());
+    }
+
+
+    @PostMapping
+    public Long create(@RequestBody @Valid RecurringCreate body, @CurrentUser AppUserDetails me) {
+        RecurringTransaction r = recurringService.create(me.getId(), body.type(), body.amount(),
+                body.categoryId(), body.subcategoryId(), body.note(),
+                body.frequency(), body.startDate(), body.endDate());
+        return r.getId();
+    }
+
+
+    @DeleteMapping("/{id}")
+    public void delete(@PathVariable Long id, @CurrentUser AppUserDetails me) {
+        recurringService.delete(me.getId(), id);
+    }
+}
@@ -0,0 +1,59 @@
+package org.fin.walley.api;
+
+
+import org.fin.walley.config.AppUserDetails;
+import org.fin.walley.config.CurrentUser;
+import org.fin.walley.domain.TransactionType;
+import org.fin.walley.service.ReportService;
+import org.fin.walley.view.CategoryTotalView;
+import org.fin.walley.view.SubcategoryTotalView;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.web.bind.annotation.*;
+
+
+import java.time.YearMonth;
+import java.util.List;
+
+
+/**
+ * Monthly spending reports; months are {@code yyyy-MM}, ranges are inclusive.
+ */
+@RestController
+@RequestMapping("/api/reports")
+public class ReportApiController {
+
+
+    private final ReportService reports;
+
+
+    public ReportApiController(ReportService reports) {
+        this.reports = reports;
+    }
+
+
+    @GetMapping("/top-categories")
+    public List<CategoryTotalView> topCategories(@RequestParam(defaultValue = "EXPENSE") TransactionType type,
+                                                 @RequestParam @DateTimeFormat(pattern = "yyyy-MM") YearMonth from,
+                                                 @RequestParam @DateTimeFormat(pattern = "yyyy-MM") YearMonth to,
+                                                 @RequestParam(defaultValue = "10") int limit,
+                                                 @CurrentUser AppUserDetails me) {
+        return reports.topCategories(me.getId(), type, from, to, limit);
+    }
+
+
+    @GetMapping("/month-over-month")
+    public List<ReportService.MonthOverMonth> monthOverMonth(@RequestParam(defaultValue = "EXPENSE") TransactionType type,
+                                                             @RequestParam @DateTimeFormat(pattern = "yyyy-MM") YearMonth month,
+                                                             @CurrentUser AppUserDetails me) {
+        return reports.monthOverMonth(me.getId(), type, month);
+    }
+
+
+    @GetMapping("/categories/{categoryId}/breakdown")
+    public List<SubcategoryTotalView> breakdown(@PathVariable Long categoryId,
+                                                @RequestParam @DateTimeFormat(pattern = "yyyy-MM") YearMonth from,
+                                                @RequestParam @DateTimeFormat(pattern = "yyyy-MM") YearMonth to,
+                                                @CurrentUser AppUserDetails me) {
+        return reports.subcategoryBreakdown(me.getId(), categoryId, from, to);
+    }
+}
@@ -0,0 +1,39 @@
+package org.fin.walley.api;
+
+
+import org.fin.walley.config.AppUserDetails;
+import org.fin.walley.config.CurrentUser;
+import org.fin.walley.service.SyncService;
+import org.fin.walley.view.SyncView;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+
+
+
+/**
+ * Delta sync for offline clients: {@code GET /api/sync} without {@code since} returns a full snapshot,
+ * then each call with the last {@code token} returns only what changed. Page on while {@code hasMore}.
+ */
+@RestController
+@RequestMapping("/api/sync")
+public class SyncApiController {
+
+
+    private final SyncService syncService;
+
+
+    public SyncApiController(SyncService syncService) {
+        this.syncService = syncService;
+    }
+
+
+    @GetMapping
+    public SyncView sync(@RequestParam(required = false) String since,
+                         @RequestParam(defaultValue = "" + SyncService.DEFAULT_LIMIT) int limit,
+                         @CurrentUser AppUserDetails me) {
+        return syncService.changes(me.getId(), since, limit);
+    }
+}
@@ -3,23 +3,34 @@ package org.fin.walley.api;
 
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.*;
-import org.fin.walley.domain.Category;
-import org.fin.walley.domain.Subcategory;
+import org.fin.walley.config.AppUserDetails;
+import org.fin.walley.config.CurrentUser;
 import org.fin.walley.domain.Transaction;
 import org.fin.walley.domain.TransactionType;
-import org.fin.walley.repo.CategoryRepository;
-import org.fin.walley.repo.SubcategoryRepository;
+import org.fin.walley.service.ColumnarExportService;
+import org.fin.walley.service.DataVersionService;
 import org.fin.walley.service.ImportExportService;
+import org.fin.walley.service.TimeSeriesService;
+import org.fin.walley.service.ImportJobService;
 import org.fin.walley.service.TransactionService;
+import org.fin.walley.service.TxFilter;
+import org.fin.walley.view.ImportJobView;
+import org.fin.walley.view.ImportJobView.Kind;
+import org.fin.walley.view.TransactionView;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.math.BigDecimal;
-import java.security.Principal;
 import java.time.LocalDate;
 import java.util.List;
 
@@ -31,18 +42,24 @@ public class TransactionApiController {
 
     private final TransactionService txService;
     private final ImportExportService importExport;
-    private final CategoryRepository catRepo;
-    private final SubcategoryRepository subRepo;
+    private final ImportJobService importJobs;
+    private final TimeSeriesService timeSeries;
+    private final ColumnarExportService columnarExport;
+    private final DataVersionService versions;
 
 
     public TransactionApiController(TransactionService txService,
                                     ImportExportService importExport,
-                                    CategoryRepository catRepo,
-                                    SubcategoryRepository subRepo) {
+                                    ImportJobService importJobs,
+                                    TimeSeriesService timeSeries,
+                                    ColumnarExportService columnarExport,
+                                    DataVersionService versions) {
         this.txService = txService;
         this.importExport = importExport;
-        this.catRepo = catRepo;
-        this.subRepo = subRepo;
+        this.importJobs = importJobs;
+        this.timeSeries = timeSeries;
+        this.columnarExport = columnarExport;
+        this.versions = versions;
     }
 
 
@@ -57,12 +74,13 @@ public class TransactionApiController {
             String subcategoryName,
             String note
     ) {
+        static TxDto from(TransactionView v) {
+            return new TxDto(v.id(), v.type(), v.amount(), v.date(),
+                    v.categoryId(), v.categoryName(), v.subcategoryId(), v.subcategoryName(), v.note());
+        }
+
         static TxDto from(Transaction t) {
-            Long catId = t.getCategory() != null ? t.getCategory().getId() : null;
-            String catName = t.getCategory() != null ? t.getCategory().getName() : null;
-            Long subId = t.getSubcategory() != null ? t.getSubcategory().getId() : null;
-            String subName = t.getSubcategory() != null ? t.getSubcategory().getName() : null;
-            return new TxDto(t.getId(), t.getType(), t.getAmount(), t.getDate(), catId, catName, subId, subName, t.getNote());
+            return from(TransactionView.of(t));
         }
     }
 
@@ -84,29 +102,102 @@ public class TransactionApiController {
             return t;
         }
     }
+    /**
+     * Keyset-paged listing. The next page is advertised via {@code Link: <...>; rel="next"};
+     * the last page carries no such header. Answers {@code If-None-Match} with 304 while the user's data is unchanged.
+     */
     @GetMapping
-    public List<TxDto> list(Principal principal) {
-        return txService.listForUser(principal.getName()).stream().map(TxDto::from).toList();
+    public ResponseEntity<List<TxDto>> list(@RequestParam(required = false) String cursor,
+                                            @RequestParam(defaultValue = "" + TransactionService.DEFAULT_PAGE_SIZE) int size,
+                                            @CurrentUser AppUserDetails me,
+                                            WebRequest request) {
+        String etag = versions.etag(me.getId());
+        if (ConditionalGet.unchanged(request, etag)) return ConditionalGet.notModified(etag);
+
+        TransactionService.TxPage page = txService.pageForUser(me.getId(), cursor, size);
+        return pageResponse(page, size, etag);
     }
 
+    /**
+     * Filtered listing: {@code from}, {@code to}, {@code type}, {@code categoryIds}, {@code subcategoryIds},
+     * {@code minAmount}, {@code maxAmount}, {@code note} (substring). Paged and tagged like {@link #list}.
+     */
+    @GetMapping("/query")
+    public ResponseEntity<List<TxDto>> query(@ModelAttribute TxFilter filter,
+                                             @RequestParam(required = false) String cursor,
+                                             @RequestParam(defaultValue = "" + TransactionService.DEFAULT_PAGE_SIZE) int size,
+                                             @CurrentUser AppUserDetails me,
+                                             WebRequest request) {
+        String etag = versions.etag(me.getId());
+        if (ConditionalGet.unchanged(request, etag)) return ConditionalGet.notModified(etag);
+
+        TransactionService.TxPage page = txService.queryForUser(me.getId(), filter, cursor, size);
+        return pageResponse(page, size, etag);
+    }
+
+    /**
+     * Ranked search over notes: {@code ?q=dentist&page=0&size=50}. Next page via {@code Link: rel="next"}.
+     */
+    @GetMapping("/search")
+    public ResponseEntity<List<TxDto>> search(@RequestParam String q,
+                                              @RequestParam(defaultValue = "0") int page,
+                                              @RequestParam(defaultValue = "" + TransactionService.DEFAULT_PAGE_SIZE) int size,
+                                              @CurrentUser AppUserDetails me) {
+        TransactionService.SearchPage result = txService.searchNotes(me.getId(), q, page, size);
+
+        ResponseEntity.BodyBuilder ok = ResponseEntity.ok();
+        if (result.hasNext()) {
+            String next = ServletUriComponentsBuilder.fromCurrentRequest()
+                    .replaceQueryParam("page", result.page() + 1)
+                    .replaceQueryParam("size", TransactionService.clampPageSize(size))
+                    .toUriString();
+            ok.header(HttpHeaders.LINK, "<" + next + ">; rel=\"next\"");
+        }
+        return ok.body(result.items().stream().map(TxDto::from).toList());
+    }
+
+    /**
+     * Chart data: {@code ?from=2025-01-01&to=2025-12-31&granularity=MONTH&cumulative=true}.
+     * Returns parallel arrays (one element per bucket), not transactions.
+     */
+    @GetMapping("/timeseries")
+    public TimeSeriesService.TimeSeries timeseries(@RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                                   @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                                                   @RequestParam(defaultValue = "MONTH") TimeSeriesService.Granularity granularity,
+                                                   @RequestParam(defaultValue = "false") boolean cumulative,
+                                                   @CurrentUser AppUserDetails me) {
+        return timeSeries.series(me.getId(), from, to, granularity, cumulative);
+    }
+
+    private ResponseEntity<List<TxDto>> pageResponse(TransactionService.TxPage page, int size, String etag) {
+        ResponseEntity.BodyBuilder ok = ConditionalGet.ok(etag);
+        if (page.hasNext()) {
+            String next = ServletUriComponentsBuilder.fromCurrentRequest()
+                    .replaceQueryParam("cursor", page.nextCursor())
+                    .replaceQueryParam("size", TransactionService.clampPageSize(size))
+                    .toUriString();
+            ok.header(HttpHeaders.LINK, "<" + next + ">; rel=\"next\"");
+        }
+        return ok.body(page.items().stream().map(TxDto::from).toList());
+    }
 
     @PostMapping
-    public TxDto create(@RequestBody @Valid TxUpsert body, Principal principal) {
-        Transaction saved = txService.create(principal.getName(), body.toEntity(), body.categoryId(), body.subcategoryId());
+    public TxDto create(@RequestBody @Valid TxUpsert body, @CurrentUser AppUserDetails me) {
+        Transaction saved = txService.create(me.getId(), body.toEntity(), body.categoryId(), body.subcategoryId());
         return TxDto.from(saved);
     }
 
 
     @PutMapping("/{id}")
-    public TxDto update(@PathVariable Long id, @RequestBody @Valid TxUpsert body, Principal principal) {
-        Transaction updated = txService.update(principal.getName(), id, body.toEntity(), body.categoryId(), body.subcategoryId());
+    public TxDto update(@PathVariable Long id, @RequestBody @Valid TxUpsert body, @CurrentUser AppUserDetails me) {
+        Transaction updated = txService.update(me.getId(), id, body.toEntity(), body.categoryId(), body.subcategoryId());
         return TxDto.from(updated);
     }
 
 
     @DeleteMapping("/{id}")
-    public void delete(@PathVariable Long id, Principal principal) {
-        txService.delete(principal.getName(), id);
+    public void delete(@PathVariable Long id, @CurrentUser AppUserDetails me) {
+        txService.delete(me.getId(), id);
     }
 
 
@@ -114,72 +205,75 @@ public class TransactionApiController {
 
 
     @GetMapping(value = "/export/csv", produces = "text/csv")
-    public ResponseEntity<String> exportCsv(Principal principal) {
-        String csv = importExport.exportTransactionsToCsv(txService.listForUser(principal.getName()));
+    public ResponseEntity<StreamingResponseBody> exportCsv(@ModelAttribute TxFilter filter,
+                                                           @CurrentUser AppUserDetails me) {
+        Long userId = me.getId();
+        // пишется прямо в ответ по мере чтения курсора, уже после выхода из метода
+        StreamingResponseBody body = out ->
+                txService.streamForUser(userId, filter, rows -> importExport.writeTransactionsCsv(rows, out));
         return ResponseEntity.ok()
                 .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=transactions.csv")
                 .contentType(MediaType.parseMediaType("text/csv"))
-                .body(csv);
+                .body(body);
     }
 
 
-    @PostMapping(value = "/import/csv", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
-    public List<TxDto> importCsv(@RequestParam("file") MultipartFile file, Principal principal) {
-        String username = principal.getName();
-        List<ImportExportService.CsvRow> rows = importExport.importRowsFromCsv(file);
-
+    // импорт фоновый: файл сохраняется на диск, в ответ 202 и задача (ход — в /api/import-jobs/{id})
 
-        for (ImportExportService.CsvRow r : rows) {
-// найдём/создадим category по имени (внутри пользователя)
-            Category cat = catRepo.findByUserUsernameAndTypeAndName(username, r.type(), r.category())
-                    .orElseGet(() -> catRepo.save(Category.builder()
-                            .name(r.category())
-                            .type(r.type())
-                            .user(txService.requireUser(username))
-                            .build()));
-
-
-            Long subId = null;
-            if (r.subcategory() != null && !r.subcategory().isBlank()) {
-                Subcategory sub = subRepo.findByCategoryIdAndNameAndCategoryUserUsername(cat.getId(), r.subcategory(), username)
-                        .orElseGet(() -> subRepo.save(Subcategory.builder()
-                                .name(r.subcategory())
-                                .category(cat)
-                                .build()));
-                subId = sub.getId();
-            }
-
-
-            Transaction t = new Transaction();
-            t.setType(r.type());
-            t.setAmount(r.amount());
-            t.setDate(r.date());
-            t.setNote(r.note());
-
-
-            txService.create(username, t, cat.getId(), subId);
+    /**
+     * {@code dedup=true}: rows already present (same type, amount, date, category, subcategory and note) are
+     * skipped, so re-uploading an overlapping bank export only adds what is new; see rowsSkipped in the job.
+     */
+    @PostMapping(value = "/import/csv", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<ImportJobView> importCsv(@RequestParam("file") MultipartFile file,
+                                                   @RequestParam(defaultValue = "false") boolean dedup,
+                                                   @CurrentUser AppUserDetails me) throws IOException {
+        try (InputStream in = file.getInputStream()) {
+            return ImportJobApiController.accepted(importJobs.submit(me.getUsername(), Kind.USER_CSV, dedup, in));
         }
+    }
 
 
-        return list(principal);
+    /**
+     * Same rows and filter as the CSV export, as an Arrow IPC file (see {@link ColumnarExportService}).
+     */
+    @GetMapping(value = "/export/arrow", produces = ColumnarExportService.MEDIA_TYPE)
+    public ResponseEntity<StreamingResponseBody> exportArrow(@ModelAttribute TxFilter filter,
+                                                             @CurrentUser AppUserDetails me) {
+        Long userId = me.getId();
+        StreamingResponseBody body = out -> columnarExport.writeTransactionsArrow(userId, filter, out);
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=transactions.arrow")
+                .contentType(MediaType.parseMediaType(ColumnarExportService.MEDIA_TYPE))
+                .body(body);
     }
 
 
 // --- Export/Import JSON ---
 
 
+    /**
+     * Every transaction of the user as one JSON array of {@link TxDto}, newest first, streamed from a cursor
+     * like the CSV export.
+     */
     @GetMapping(value = "/export/json", produces = MediaType.APPLICATION_JSON_VALUE)
-    public List<TxDto> exportJson(Principal principal) {
-        return list(principal);
+    public ResponseEntity<StreamingResponseBody> exportJson(@CurrentUser AppUserDetails me) {
+        Long userId = me.getId();
+        StreamingResponseBody body = out -> txService.streamForUser(userId, TxFilter.none(),
+                rows -> importExport.writeJsonArray(rows.map(TxDto::from), out));
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(body);
     }
 
 
+    /**
+     * Body is a JSON array of {@link TxUpsert}-shaped objects, read element by element rather than bound whole.
+     */
     @PostMapping(value = "/import/json", consumes = MediaType.APPLICATION_JSON_VALUE)
-    public List<TxDto> importJson(@RequestBody List<@Valid TxUpsert> body, Principal principal) {
-        String username = principal.getName();
-        for (TxUpsert item : body) {
-            txService.create(username, item.toEntity(), item.categoryId(), item.subcategoryId());
-        }
-        return list(principal);
+    public ResponseEntity<ImportJobView> importJson(InputStream body,
+                                                    @RequestParam(defaultValue = "false") boolean dedup,
+                                                    @CurrentUser AppUserDetails me) {
+        return ImportJobApiController.accepted(importJobs.submit(me.getUsername(), Kind.USER_JSON, dedup, body));
     }
 }
\ No newline at end of file
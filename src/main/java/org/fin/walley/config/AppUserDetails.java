@@ -0,0 +1,27 @@
+package org.fin.walley.config;
+
+import org.fin.walley.domain.AppUser;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.userdetails.User;
+
+import java.util.List;
+
+/**
+ * Authenticated principal with the user's id, resolved once at login. Controllers take it as
+ * {@code @CurrentUser AppUserDetails me} and hand {@link #getId()} to the services, whose
+ * queries then filter on {@code user_id} instead of joining {@code app_user} by username.
+ */
+public class AppUserDetails extends User {
+
+    private final Long id;
+
+    public AppUserDetails(AppUser u) {
+        super(u.getUsername(), u.getPasswordHash(), u.isEnabled(), true, true, true,
+                List.of(new SimpleGrantedAuthority("ROLE_" + u.getRole().name())));
+        this.id = u.getId();
+    }
+
+    public Long getId() {
+        return id;
+    }
+}
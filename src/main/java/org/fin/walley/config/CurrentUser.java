@@ -0,0 +1,20 @@
+package org.fin.walley.config;
+
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * The logged-in {@link AppUserDetails}. A principal of any other type (an authentication not built by our
+ * UserDetailsService) fails the request instead of arriving as null and blowing up on {@code me.getId()}.
+ */
+@Target(ElementType.PARAMETER)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+@AuthenticationPrincipal(errorOnInvalidType = true)
+public @interface CurrentUser {
+}
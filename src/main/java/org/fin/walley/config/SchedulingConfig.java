@@ -0,0 +1,59 @@
+package org.fin.walley.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadPoolExecutor;
+
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+
+    /**
+     * Workers for background batch jobs. Deliberately small and bounded: each worker holds one pooled
+     * DB connection for the length of a chunk, the rest of the pool stays free for web requests.
+     * When the queue is full the submitting (scheduler) thread runs the chunk itself, which throttles it.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor batchExecutor(@Value("${walley.batch.workers:2}") int workers) {
+        ThreadPoolTaskExecutor ex = new ThreadPoolTaskExecutor();
+        ex.setCorePoolSize(workers);
+        ex.setMaxPoolSize(workers);
+        ex.setQueueCapacity(workers * 2);
+        ex.setThreadNamePrefix("batch-");
+        ex.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        ex.setWaitForTasksToCompleteOnShutdown(true);
+        ex.setAwaitTerminationSeconds(30);
+        return ex;
+    }
+
+    /**
+     * Workers for upload import jobs (ImportJobService). Jobs of one user are chained, so the queue only ever
+     * holds the next job of each user; how many a user may stack up is capped by ImportJobService before the
+     * upload is spooled. Should the queue still overflow (more users than its capacity), the job is marked
+     * failed instead of running on the submitting thread.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor importExecutor(@Value("${walley.import.workers:2}") int workers) {
+        ThreadPoolTaskExecutor ex = new ThreadPoolTaskExecutor();
+        ex.setCorePoolSize(workers);
+        ex.setMaxPoolSize(workers);
+        ex.setQueueCapacity(200);
+        ex.setThreadNamePrefix("import-");
+        ex.setWaitForTasksToCompleteOnShutdown(false);
+        return ex;
+    }
+
+    /**
+     * CPU-bound parse/validate stage of CSV imports (CsvPipeline). Shared by all running imports;
+     * {@code 0} means one thread per core.
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ForkJoinPool parsePool(@Value("${walley.import.parse-threads:0}") int threads) {
+        return new ForkJoinPool(threads > 0 ? threads : Runtime.getRuntime().availableProcessors());
+    }
+}
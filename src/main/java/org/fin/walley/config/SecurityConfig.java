@@ -4,7 +4,6 @@ import org.fin.walley.domain.AppUser;
 import org.fin.walley.repo.AppUserRepository;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.security.core.userdetails.User;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
@@ -25,11 +24,8 @@ public class SecurityConfig {
             AppUser u = users.findByUsername(username)
                     .orElseThrow(() -> new IllegalArgumentException("User not found: " + username));
 
-            return User.withUsername(u.getUsername())
-                    .password(u.getPasswordHash())
-                    .roles(u.getRole().name())
-                    .disabled(!u.isEnabled())
-                    .build();
+            // id попадает в сессию вместе с именем — дальше запросы фильтруются по user_id
+            return new AppUserDetails(u);
         };
     }
 
@@ -38,7 +34,7 @@ public class SecurityConfig {
         http
                 .authorizeHttpRequests(auth -> auth
                         .requestMatchers("/css/**", "/js/**", "/images/**", "/login", "/register").permitAll()
-                        .requestMatchers("/admin/**").hasRole("ADMIN")
+                        .requestMatchers("/admin/**", "/actuator/**").hasRole("ADMIN")
                         .requestMatchers("/api/**").authenticated()
                         .anyRequest().authenticated()
                 )
@@ -0,0 +1,68 @@
+package org.fin.walley.domain;
+
+
+import jakarta.persistence.*;
+import jakarta.validation.constraints.*;
+import lombok.*;
+
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+
+/**
+ * Spending limit for an EXPENSE category (optionally narrowed to one subcategory) per week or month.
+ * Spent amounts live in {@link BudgetCounter}, kept current by LedgerService.
+ */
+@Entity
+@Table(name = "budget")
+@Getter @Setter
+@NoArgsConstructor @AllArgsConstructor
+@Builder
+public class Budget {
+
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+
+    @ManyToOne(optional = false, fetch = FetchType.LAZY)
+    @JoinColumn(name = "user_id", nullable = false)
+    private AppUser user;
+
+
+    @ManyToOne(optional = false, fetch = FetchType.LAZY)
+    @JoinColumn(name = "category_id", nullable = false)
+    private Category category;
+
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "subcategory_id")
+    private Subcategory subcategory;
+
+
+    @Enumerated(EnumType.STRING)
+    @NotNull
+    @Column(nullable = false)
+    private BudgetPeriod period;
+
+
+    @NotNull
+    @Positive
+    @Digits(integer = 12, fraction = 2)
+    @Column(nullable = false, precision = 14, scale = 2)
+    private BigDecimal limitAmount;
+
+
+    // порог предупреждения, % от лимита
+    @Min(1)
+    @Max(100)
+    @Column(nullable = false)
+    private int alertPercent;
+
+
+    // начало периода, с которого ведутся счётчики; более ранние транзакции не учитываются
+    @Column(nullable = false)
+    private LocalDate trackedFrom;
+}
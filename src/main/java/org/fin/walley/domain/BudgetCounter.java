@@ -0,0 +1,42 @@
+package org.fin.walley.domain;
+
+
+import jakarta.persistence.*;
+import lombok.*;
+
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+
+/**
+ * Running amount spent against a {@link Budget} in one period.
+ */
+@Entity
+@Table(name = "budget_counter", uniqueConstraints = @UniqueConstraint(
+        name = "uk_budget_counter_budget_period",
+        columnNames = {"budget_id", "period_start"}
+))
+@Getter @Setter
+@NoArgsConstructor @AllArgsConstructor
+@Builder
+public class BudgetCounter {
+
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+
+    @ManyToOne(optional = false, fetch = FetchType.LAZY)
+    @JoinColumn(name = "budget_id", nullable = false)
+    private Budget budget;
+
+
+    @Column(name = "period_start", nullable = false)
+    private LocalDate periodStart;
+
+
+    @Column(nullable = false, precision = 16, scale = 2)
+    private BigDecimal spent;
+}
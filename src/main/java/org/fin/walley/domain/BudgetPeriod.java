@@ -0,0 +1,23 @@
+package org.fin.walley.domain;
+
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
+
+
+public enum BudgetPeriod {
+    WEEK,
+    MONTH;
+
+
+    /**
+     * First day of the period containing {@code date}; weeks start on Monday (same as date_trunc('week')).
+     */
+    public LocalDate startOf(LocalDate date) {
+        return switch (this) {
+            case WEEK -> date.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+            case MONTH -> date.withDayOfMonth(1);
+        };
+    }
+}
@@ -0,0 +1,47 @@
+package org.fin.walley.domain;
+
+
+import jakarta.persistence.*;
+import lombok.*;
+
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+
+/**
+ * Per-user, per-day income/expense rollup of {@link Transaction}.
+ * Maintained by LedgerService in the same DB transaction as every write to tx.
+ */
+@Entity
+@Table(name = "daily_balance", uniqueConstraints = @UniqueConstraint(
+        name = "uk_daily_balance_user_date",
+        columnNames = {"user_id", "date"}
+))
+@Getter @Setter
+@NoArgsConstructor @AllArgsConstructor
+@Builder
+public class DailyBalance {
+
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+
+    @ManyToOne(optional = false, fetch = FetchType.LAZY)
+    @JoinColumn(name = "user_id", nullable = false)
+    private AppUser user;
+
+
+    @Column(nullable = false)
+    private LocalDate date;
+
+
+    @Column(nullable = false, precision = 16, scale = 2)
+    private BigDecimal income;
+
+
+    @Column(nullable = false, precision = 16, scale = 2)
+    private BigDecimal expense;
+}
@@ -0,0 +1,61 @@
+package org.fin.walley.domain;
+
+
+import jakarta.persistence.*;
+import lombok.*;
+
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+
+/**
+ * Monthly rollup of {@link Transaction} amounts per user, type, category and subcategory
+ * (subcategory null = transactions without one). Maintained by LedgerService.
+ * Uniqueness is an expression index over coalesce(subcategory_id, 0), see V1__baseline.sql.
+ */
+@Entity
+@Table(name = "monthly_category_total")
+@Getter @Setter
+@NoArgsConstructor @AllArgsConstructor
+@Builder
+public class MonthlyCategoryTotal {
+
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+
+    @ManyToOne(optional = false, fetch = FetchType.LAZY)
+    @JoinColumn(name = "user_id", nullable = false)
+    private AppUser user;
+
+
+    // первое число месяца
+    @Column(nullable = false)
+    private LocalDate month;
+
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private TransactionType type;
+
+
+    @ManyToOne(optional = false, fetch = FetchType.LAZY)
+    @JoinColumn(name = "category_id", nullable = false)
+    private Category category;
+
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "subcategory_id")
+    private Subcategory subcategory;
+
+
+    @Column(nullable = false, precision = 16, scale = 2)
+    private BigDecimal total;
+
+
+    @Column(name = "tx_count", nullable = false)
+    private long txCount;
+}
@@ -0,0 +1,7 @@
+package org.fin.walley.domain;
+
+
+public enum RecurrenceFrequency {
+    WEEKLY,
+    MONTHLY
+}
@@ -0,0 +1,89 @@
+package org.fin.walley.domain;
+
+
+import jakarta.persistence.*;
+import jakarta.validation.constraints.*;
+import lombok.*;
+
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+
+/**
+ * Template for a transaction that repeats weekly or monthly (salary, rent, subscriptions).
+ * Occurrence n falls on {@code startDate + n * period}, so a monthly rule started on the 31st
+ * lands on the last day of shorter months without drifting.
+ */
+@Entity
+@Table(name = "recurring_tx")
+@Getter @Setter
+@NoArgsConstructor @AllArgsConstructor
+@Builder
+public class RecurringTransaction {
+
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+
+    @ManyToOne(optional = false, fetch = FetchType.LAZY)
+    @JoinColumn(name = "user_id", nullable = false)
+    private AppUser user;
+
+
+    @Enumerated(EnumType.STRING)
+    @NotNull
+    @Column(nullable = false)
+    private TransactionType type;
+
+
+    @NotNull
+    @Positive
+    @Digits(integer = 12, fraction = 2)
+    @Column(nullable = false, precision = 14, scale = 2)
+    private BigDecimal amount;
+
+
+    @ManyToOne(optional = false, fetch = FetchType.LAZY)
+    @JoinColumn(name = "category_id", nullable = false)
+    private Category category;
+
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "subcategory_id")
+    private Subcategory subcategory;
+
+
+    @Size(max = 255)
+    private String note;
+
+
+    @Enumerated(EnumType.STRING)
+    @NotNull
+    @Column(nullable = false)
+    private RecurrenceFrequency frequency;
+
+
+    @NotNull
+    @Column(nullable = false)
+    private LocalDate startDate;
+
+
+    // включительно; null — бессрочно
+    private LocalDate endDate;
+
+
+    // сколько вхождений уже создано
+    @Column(nullable = false)
+    private int occurrences;
+
+
+    @Column(nullable = false)
+    private LocalDate nextDue;
+
+
+    @Column(nullable = false)
+    private boolean active;
+}
@@ -5,9 +5,13 @@ import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import jakarta.validation.constraints.NotBlank;
 import lombok.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 @Table(
         name = "subcategory",
         uniqueConstraints = @UniqueConstraint(
@@ -22,7 +26,8 @@ public class Subcategory {
 
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "subcategory_seq")
+    @SequenceGenerator(name = "subcategory_seq", sequenceName = "subcategory_seq", allocationSize = 50)
     private Long id;
 
 
@@ -21,7 +21,8 @@ public class Transaction {
 
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "tx_seq")
+    @SequenceGenerator(name = "tx_seq", sequenceName = "tx_seq", allocationSize = 50)
     private Long id;
 
 
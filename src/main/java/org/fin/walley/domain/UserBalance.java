@@ -0,0 +1,34 @@
+package org.fin.walley.domain;
+
+
+import jakarta.persistence.*;
+import lombok.*;
+
+
+import java.math.BigDecimal;
+
+
+/**
+ * All-time income/expense of a user: the sum of their {@link DailyBalance} rows.
+ * Kept by a trigger on daily_balance (V4__user_balance.sql); never written from Java.
+ */
+@Entity
+@Table(name = "user_balance")
+@Getter @Setter
+@NoArgsConstructor @AllArgsConstructor
+@Builder
+public class UserBalance {
+
+
+    @Id
+    @Column(name = "user_id")
+    private Long userId;
+
+
+    @Column(nullable = false, precision = 18, scale = 2)
+    private BigDecimal income;
+
+
+    @Column(nullable = false, precision = 18, scale = 2)
+    private BigDecimal expense;
+}
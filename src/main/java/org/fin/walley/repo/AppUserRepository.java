@@ -1,14 +1,32 @@
 package org.fin.walley.repo;
 
 
+import jakarta.persistence.QueryHint;
 import org.fin.walley.domain.AppUser;
+import org.fin.walley.view.UserView;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 
 
+import java.util.List;
 import java.util.Optional;
 
 
 public interface AppUserRepository extends JpaRepository<AppUser, Long> {
+    // вызывается на каждое создание/изменение транзакции и вход; результат в кэше запросов
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
     Optional<AppUser> findByUsername(String username);
     boolean existsByUsername(String username);
+
+    @Query("""
+           select new org.fin.walley.view.UserView(u.id, u.username, u.role, u.enabled)
+           from AppUser u
+           order by u.username asc
+           """)
+    List<UserView> findAllViews();
+
+    @Query("select u.username from AppUser u order by u.username asc")
+    List<String> findAllUsernames();
 }
\ No newline at end of file
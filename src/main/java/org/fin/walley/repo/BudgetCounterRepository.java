@@ -0,0 +1,130 @@
+package org.fin.walley.repo;
+
+import jakarta.persistence.QueryHint;
+import org.fin.walley.domain.BudgetCounter;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Collection;
+
+public interface BudgetCounterRepository extends JpaRepository<BudgetCounter, Long> {
+
+    /**
+     * Adds {@code amount} to the counters of every budget an expense on {@code date} in this
+     * category/subcategory falls under (category-wide budgets and the matching subcategory budget).
+     */
+    @Modifying(flushAutomatically = true)
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "budget_counter"))
+    @Query(value = """
+            insert into budget_counter (budget_id, period_start, spent)
+            select b.id,
+                   cast(date_trunc(case when b.period = 'WEEK' then 'week' else 'month' end,
+                                   cast(:date as timestamp)) as date),
+                   :amount
+            from budget b
+            where b.category_id = :categoryId
+              and (b.subcategory_id is null or b.subcategory_id = cast(:subcategoryId as bigint))
+              and b.tracked_from <= cast(:date as date)
+            on conflict (budget_id, period_start) do update
+               set spent = budget_counter.spent + excluded.spent
+           """, nativeQuery = true)
+    int addDelta(@Param("categoryId") Long categoryId,
+                 @Param("subcategoryId") Long subcategoryId,
+                 @Param("date") LocalDate date,
+                 @Param("amount") BigDecimal amount);
+
+    /**
+     * Set-based {@link #addDelta}: counts the given (freshly inserted) expenses in one statement.
+     */
+    @Modifying(flushAutomatically = true)
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "budget_counter"))
+    @Query(value = """
+            insert into budget_counter (budget_id, period_start, spent)
+            select b.id,
+                   cast(date_trunc(case when b.period = 'WEEK' then 'week' else 'month' end,
+                                   cast(t.date as timestamp)) as date),
+                   sum(t.amount)
+            from tx t
+            join budget b
+              on b.category_id = t.category_id
+             and (b.subcategory_id is null or b.subcategory_id = t.subcategory_id)
+             and b.tracked_from <= t.date
+            where t.id in (:txIds)
+              and t.type = 'EXPENSE'
+            group by 1, 2
+            on conflict (budget_id, period_start) do update
+               set spent = budget_counter.spent + excluded.spent
+           """, nativeQuery = true)
+    int addTransactions(@Param("txIds") Collection<Long> txIds);
+
+    /**
+     * Same as {@link #addTransactions} for the rows listed in the bulk-import ids table
+     * ({@code BulkImportRepository.IDS_TABLE}); runs in the import's transaction.
+     */
+    @Modifying(flushAutomatically = true)
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "budget_counter"))
+    @Query(value = """
+            insert into budget_counter (budget_id, period_start, spent)
+            select b.id,
+                   cast(date_trunc(case when b.period = 'WEEK' then 'week' else 'month' end,
+                                   cast(t.date as timestamp)) as date),
+                   sum(t.amount)
+            from tx t
+            join tx_import_ids i on i.id = t.id
+            join budget b
+              on b.category_id = t.category_id
+             and (b.subcategory_id is null or b.subcategory_id = t.subcategory_id)
+             and b.tracked_from <= t.date
+            where t.type = 'EXPENSE'
+            group by 1, 2
+            on conflict (budget_id, period_start) do update
+               set spent = budget_counter.spent + excluded.spent
+           """, nativeQuery = true)
+    int addBulkImported();
+
+    /**
+     * Initial counters of a new budget: its expenses from {@code trackedFrom} on, one row per period.
+     * {@code unit} is 'week' or 'month'.
+     */
+    @Modifying(flushAutomatically = true)
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "budget_counter"))
+    @Query(value = """
+            insert into budget_counter (budget_id, period_start, spent)
+            select :budgetId,
+                   cast(date_trunc(:unit, cast(t.date as timestamp)) as date),
+                   sum(t.amount)
+            from tx t
+            where t.category_id = :categoryId
+              and t.type = 'EXPENSE'
+              and (cast(:subcategoryId as bigint) is null or t.subcategory_id = cast(:subcategoryId as bigint))
+              and t.date >= cast(:trackedFrom as date)
+            group by 2
+           """, nativeQuery = true)
+    int seed(@Param("budgetId") Long budgetId,
+             @Param("unit") String unit,
+             @Param("categoryId") Long categoryId,
+             @Param("subcategoryId") Long subcategoryId,
+             @Param("trackedFrom") LocalDate trackedFrom);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("delete from BudgetCounter k where k.budget.category.id = :categoryId")
+    int deleteAllForCategory(@Param("categoryId") Long categoryId);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("delete from BudgetCounter k where k.budget.subcategory.id = :subId")
+    int deleteAllForSubcategory(@Param("subId") Long subId);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("delete from BudgetCounter k where k.budget.user.id = :userId")
+    int deleteAllForUser(@Param("userId") Long userId);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("delete from BudgetCounter k where k.budget.id = :budgetId")
+    int deleteAllForBudget(@Param("budgetId") Long budgetId);
+}
@@ -0,0 +1,51 @@
+package org.fin.walley.repo;
+
+import org.fin.walley.domain.Budget;
+import org.fin.walley.view.BudgetStatusRow;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+
+public interface BudgetRepository extends JpaRepository<Budget, Long> {
+
+    Optional<Budget> findByIdAndUserId(Long id, Long userId);
+
+    /**
+     * Every budget of the user with its counter for the current period: one row per budget.
+     */
+    @Query("""
+           select new org.fin.walley.view.BudgetStatusRow(
+                  b.id, c.id, c.name, s.id, s.name, b.period, b.limitAmount, b.alertPercent, coalesce(k.spent, 0))
+           from Budget b
+           join b.category c
+           left join b.subcategory s
+           left join BudgetCounter k
+                  on k.budget = b
+                 and k.periodStart = case when b.period = org.fin.walley.domain.BudgetPeriod.WEEK
+                                          then :weekStart else :monthStart end
+           where b.user.id = :userId
+             and (:categoryId is null or c.id = :categoryId)
+           order by c.name asc, b.id asc
+           """)
+    List<BudgetStatusRow> findStatus(@Param("userId") Long userId,
+                                     @Param("categoryId") Long categoryId,
+                                     @Param("weekStart") LocalDate weekStart,
+                                     @Param("monthStart") LocalDate monthStart);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("delete from Budget b where b.category.id = :categoryId")
+    int deleteAllForCategory(@Param("categoryId") Long categoryId);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("delete from Budget b where b.subcategory.id = :subId")
+    int deleteAllForSubcategory(@Param("subId") Long subId);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("delete from Budget b where b.user.id = :userId")
+    int deleteAllForUser(@Param("userId") Long userId);
+}
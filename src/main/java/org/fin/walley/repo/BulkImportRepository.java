@@ -0,0 +1,147 @@
+package org.fin.walley.repo;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.PGCopyOutputStream;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.stereotype.Repository;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * PostgreSQL COPY path for the admin bulk import. Rows are streamed into the session-local staging table
+ * {@value #STAGE_TABLE}, then resolved and inserted into tx with a handful of set-based statements;
+ * the ids of the inserted rows are left in {@value #IDS_TABLE} for the ledger.
+ * Both tables are dropped at commit, so everything here must run inside one transaction.
+ */
+@Repository
+public class BulkImportRepository {
+
+    public static final String STAGE_TABLE = "tx_import_stage";
+    public static final String IDS_TABLE = "tx_import_ids";
+
+    public record UnknownUser(long line, String username) {}
+
+    private final JdbcTemplate jdbc;
+    private final DataSource dataSource;
+    private final ReferenceCache referenceCache;
+
+    public BulkImportRepository(JdbcTemplate jdbc, DataSource dataSource, ReferenceCache referenceCache) {
+        this.jdbc = jdbc;
+        this.dataSource = dataSource;
+        this.referenceCache = referenceCache;
+    }
+
+    public void createStagingTables() {
+        jdbc.execute("""
+                create temp table if not exists tx_import_stage (
+                    line        bigint        not null,
+                    username    text          not null,
+                    type        text          not null,
+                    amount      numeric(14,2) not null,
+                    date        date          not null,
+                    category    text          not null,
+                    subcategory text,
+                    note        text
+                ) on commit drop
+                """);
+        jdbc.execute("create temp table if not exists tx_import_ids (id bigint primary key) on commit drop");
+    }
+
+    /**
+     * COPY ... FROM STDIN into the staging table on the transaction's connection. Write CSV lines with the
+     * columns (line, username, type, amount, date, category, subcategory, note); an unquoted empty field is NULL.
+     * Call {@link PGCopyOutputStream#endCopy()} (or {@code close()}) when done, {@code cancelCopy()} on error.
+     */
+    public PGCopyOutputStream openStageCopy() {
+        Connection con = DataSourceUtils.getConnection(dataSource);
+        try {
+            return new PGCopyOutputStream(con.unwrap(PGConnection.class), """
+                    copy tx_import_stage (line, username, type, amount, date, category, subcategory, note)
+                    from stdin with (format csv)
+                    """, 1 << 16);
+        } catch (SQLException e) {
+            throw new IllegalStateException("Could not start COPY: " + e.getMessage(), e);
+        }
+    }
+
+    public void analyzeStage() {
+        jdbc.execute("analyze tx_import_stage");
+    }
+
+    /**
+     * Streams the staged rows whose username matches no user, in line order. The inserts below join
+     * app_user, so such rows are simply left out of tx.
+     */
+    public void unknownUsers(Consumer<UnknownUser> sink) {
+        jdbc.query("""
+                        select s.line, s.username
+                        from tx_import_stage s
+                        where not exists (select 1 from app_user u where u.username = s.username)
+                        order by s.line
+                        """,
+                (RowCallbackHandler) rs -> sink.accept(new UnknownUser(rs.getLong(1), rs.getString(2))));
+    }
+
+    /** Ids of the known users the staged rows belong to. */
+    public List<Long> stagedUserIds() {
+        return jdbc.queryForList("""
+                        select distinct u.id
+                        from tx_import_stage s
+                        join app_user u on u.username = s.username
+                        """,
+                Long.class);
+    }
+
+    public int insertMissingCategories() {
+        int n = jdbc.update("""
+                insert into category (id, user_id, type, name)
+                select nextval('category_seq'), d.user_id, d.type, d.category
+                from (select distinct u.id as user_id, s.type, s.category
+                      from tx_import_stage s
+                      join app_user u on u.username = s.username) d
+                on conflict (user_id, type, name) do nothing
+                """);
+        if (n > 0) referenceCache.categoriesInserted();
+        return n;
+    }
+
+    public int insertMissingSubcategories() {
+        int n = jdbc.update("""
+                insert into subcategory (id, category_id, name)
+                select nextval('subcategory_seq'), d.category_id, d.subcategory
+                from (select distinct c.id as category_id, s.subcategory
+                      from tx_import_stage s
+                      join app_user u on u.username = s.username
+                      join category c on c.user_id = u.id and c.type = s.type and c.name = s.category
+                      where s.subcategory is not null) d
+                on conflict (category_id, name) do nothing
+                """);
+        if (n > 0) referenceCache.categoriesInserted();
+        return n;
+    }
+
+    /**
+     * Inserts every staged row into tx and records the new ids in {@value #IDS_TABLE}. Returns the row count.
+     */
+    public int insertTransactions() {
+        return jdbc.update("""
+                with ins as (
+                    insert into tx (id, user_id, type, amount, date, category_id, subcategory_id, note)
+                    select nextval('tx_seq'), u.id, s.type, s.amount, s.date, c.id, sc.id, s.note
+                    from tx_import_stage s
+                    join app_user u on u.username = s.username
+                    join category c on c.user_id = u.id and c.type = s.type and c.name = s.category
+                    left join subcategory sc on sc.category_id = c.id and sc.name = s.subcategory
+                    returning id
+                )
+                insert into tx_import_ids (id)
+                select id from ins
+                """);
+    }
+}
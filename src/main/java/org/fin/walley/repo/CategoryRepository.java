@@ -1,13 +1,18 @@
 package org.fin.walley.repo;
 
 
+import jakarta.persistence.QueryHint;
 import org.fin.walley.domain.Category;
 import org.fin.walley.domain.TransactionType;
+import org.fin.walley.view.CategoryTreeRow;
+import org.fin.walley.view.CategoryView;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
 
 
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 
 import java.util.List;
@@ -15,10 +20,48 @@ import java.util.Optional;
 
 
 public interface CategoryRepository extends JpaRepository<Category, Long> {
-    List<Category> findByUserUsernameOrderByNameAsc(String username);
-    List<Category> findByUserUsernameAndTypeOrderByNameAsc(String username, TransactionType type);
-    Optional<Category> findByIdAndUserUsername(Long id, String username);
-    Optional<Category> findByUserUsernameAndTypeAndName(String username, TransactionType type, String name);
+    List<Category> findByUserIdOrderByNameAsc(Long userId);
+    List<Category> findByUserIdAndTypeOrderByNameAsc(Long userId, TransactionType type);
+    // поиск по id идёт на каждую запись транзакции и каждую форму — в кэше запросов
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
+    Optional<Category> findByIdAndUserId(Long id, Long userId);
+    // по имени — проверка существования, а по имени категории создаёт и импорт в обход Hibernate:
+    // закэшированное «нет» пережило бы такую вставку, поэтому без кэша (запрос идёт по uk_category_user_type_name)
+    Optional<Category> findByUserIdAndTypeAndName(Long userId, TransactionType type, String name);
+
+    @Query("""
+           select new org.fin.walley.view.CategoryView(c.id, c.name, c.type)
+           from Category c
+           where c.user.id = :userId
+           order by c.name asc
+           """)
+    List<CategoryView> findViewsByUserId(@Param("userId") Long userId);
+
+    @Query("""
+           select new org.fin.walley.view.CategoryView(c.id, c.name, c.type)
+           from Category c
+           where c.user.id = :userId and c.type = :type
+           order by c.name asc
+           """)
+    List<CategoryView> findViewsByUserIdAndType(@Param("userId") Long userId,
+                                                @Param("type") TransactionType type);
+
+    // дерево категорий для формы транзакции: один запрос на оба типа
+    @Query("""
+           select new org.fin.walley.view.CategoryTreeRow(c.id, c.name, c.type, s.id, s.name)
+           from Category c
+           left join Subcategory s on s.category = c
+           where c.user.id = :userId
+           order by c.type asc, c.name asc, c.id asc, s.name asc
+           """)
+    List<CategoryTreeRow> findTreeRowsByUserId(@Param("userId") Long userId);
+
+    // словари для колоночной выгрузки
+    @Query("select distinct c.name from Category c order by c.name asc")
+    List<String> findAllNames();
+
+    @Query("select distinct c.name from Category c where c.user.id = :userId order by c.name asc")
+    List<String> findNamesByUserId(@Param("userId") Long userId);
 
     @Modifying(flushAutomatically = true, clearAutomatically = true)
     @Query("delete from Category c where c.user.id = :userId")
@@ -0,0 +1,151 @@
+package org.fin.walley.repo;
+
+import jakarta.persistence.QueryHint;
+import org.fin.walley.domain.DailyBalance;
+import org.fin.walley.view.LedgerTotals;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+public interface DailyBalanceRepository extends JpaRepository<DailyBalance, Long> {
+
+    /**
+     * All-time totals: the single user_balance row (V4__user_balance.sql). Empty if the user has no ledger yet.
+     */
+    @Query("""
+            select new org.fin.walley.view.LedgerTotals(b.income, b.expense)
+            from UserBalance b
+            where b.userId = :userId
+           """)
+    Optional<LedgerTotals> totals(@Param("userId") Long userId);
+
+    /**
+     * Totals as of {@code asOf}: the all-time row minus the days after it, so the read grows with the days
+     * since {@code asOf} (a handful for the usual recent dates), not with the user's whole history.
+     */
+    @Query("""
+            select new org.fin.walley.view.LedgerTotals(
+                   b.income - coalesce(sum(d.income), 0), b.expense - coalesce(sum(d.expense), 0))
+            from UserBalance b
+            left join DailyBalance d on d.user.id = b.userId and d.date > :asOf
+            where b.userId = :userId
+            group by b.userId, b.income, b.expense
+           """)
+    Optional<LedgerTotals> totalsUpTo(@Param("userId") Long userId,
+                                      @Param("asOf") LocalDate asOf);
+
+    /**
+     * Gap-filled buckets over [fromDate, toDate]: one row {@code [bucket start, income, expense]} per
+     * {@code unit} ('day', 'week', 'month', 'year'), oldest first, zeros where nothing happened.
+     */
+    @Query(value = """
+            select cast(g.bucket as date) as bucket,
+                   coalesce(sum(d.income), 0) as income,
+                   coalesce(sum(d.expense), 0) as expense
+            from generate_series(date_trunc(:unit, cast(:fromDate as timestamp)),
+                                 cast(:toDate as timestamp),
+                                 cast(('1 ' || :unit) as interval)) as g(bucket)
+            left join daily_balance d
+                   on d.user_id = :userId
+                  and d.date >= cast(:fromDate as date)
+                  and d.date <= cast(:toDate as date)
+                  and date_trunc(:unit, cast(d.date as timestamp)) = g.bucket
+            group by g.bucket
+            order by g.bucket
+           """, nativeQuery = true)
+    List<Object[]> bucketed(@Param("userId") Long userId,
+                            @Param("unit") String unit,
+                            @Param("fromDate") LocalDate fromDate,
+                            @Param("toDate") LocalDate toDate);
+
+    /**
+     * Atomically adds (possibly negative) deltas to the user's row for {@code date}, creating it if absent.
+     */
+    @Modifying(flushAutomatically = true)
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "daily_balance"))
+    @Query(value = """
+            insert into daily_balance (user_id, date, income, expense)
+            values (:userId, :date, :income, :expense)
+            on conflict (user_id, date) do update
+               set income = daily_balance.income + excluded.income,
+                   expense = daily_balance.expense + excluded.expense
+           """, nativeQuery = true)
+    void addDelta(@Param("userId") Long userId,
+                  @Param("date") LocalDate date,
+                  @Param("income") BigDecimal income,
+                  @Param("expense") BigDecimal expense);
+
+    /**
+     * Set-based {@link #addDelta}: adds the given (freshly inserted) transactions in one statement.
+     */
+    @Modifying(flushAutomatically = true)
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "daily_balance"))
+    @Query(value = """
+            insert into daily_balance (user_id, date, income, expense)
+            select t.user_id,
+                   t.date,
+                   sum(case when t.type = 'INCOME' then t.amount else 0 end),
+                   sum(case when t.type = 'EXPENSE' then t.amount else 0 end)
+            from tx t
+            where t.id in (:txIds)
+            group by t.user_id, t.date
+            on conflict (user_id, date) do update
+               set income = daily_balance.income + excluded.income,
+                   expense = daily_balance.expense + excluded.expense
+           """, nativeQuery = true)
+    int addTransactions(@Param("txIds") Collection<Long> txIds);
+
+    /**
+     * Same as {@link #addTransactions} for the rows listed in the bulk-import ids table
+     * ({@code BulkImportRepository.IDS_TABLE}); runs in the import's transaction.
+     */
+    @Modifying(flushAutomatically = true)
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "daily_balance"))
+    @Query(value = """
+            insert into daily_balance (user_id, date, income, expense)
+            select t.user_id,
+                   t.date,
+                   sum(case when t.type = 'INCOME' then t.amount else 0 end),
+                   sum(case when t.type = 'EXPENSE' then t.amount else 0 end)
+            from tx t
+            join tx_import_ids i on i.id = t.id
+            group by t.user_id, t.date
+            on conflict (user_id, date) do update
+               set income = daily_balance.income + excluded.income,
+                   expense = daily_balance.expense + excluded.expense
+           """, nativeQuery = true)
+    int addBulkImported();
+
+    /**
+     * Takes every transaction of the category out of the ledger. Must run before the bulk delete in tx.
+     */
+    @Modifying(flushAutomatically = true)
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "daily_balance"))
+    @Query(value = """
+            insert into daily_balance (user_id, date, income, expense)
+            select t.user_id,
+                   t.date,
+                   -sum(case when t.type = 'INCOME' then t.amount else 0 end),
+                   -sum(case when t.type = 'EXPENSE' then t.amount else 0 end)
+            from tx t
+            where t.category_id = :categoryId
+            group by t.user_id, t.date
+            on conflict (user_id, date) do update
+               set income = daily_balance.income + excluded.income,
+                   expense = daily_balance.expense + excluded.expense
+           """, nativeQuery = true)
+    int subtractCategory(@Param("categoryId") Long categoryId);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("delete from DailyBalance d where d.user.id = :userId")
+    int deleteAllForUser(@Param("userId") Long userId);
+}
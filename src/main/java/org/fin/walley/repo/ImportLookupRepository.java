@@ -0,0 +1,115 @@
+package org.fin.walley.repo;
+
+import org.fin.walley.domain.TransactionType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Set-based category/subcategory lookups and upserts for imports, in plain JDBC because the keys are
+ * passed as PostgreSQL arrays ({@code unnest}). Creating a category or subcategory that already exists,
+ * including one a concurrent import has just committed, is a no-op thanks to the unique keys
+ * (user_id, type, name) and (category_id, name).
+ */
+@Repository
+public class ImportLookupRepository {
+
+    public record CategoryRow(Long id, TransactionType type, String name) {}
+
+    public record SubcategoryRow(Long id, Long categoryId, String name) {}
+
+    private final JdbcTemplate jdbc;
+    private final ReferenceCache referenceCache;
+
+    public ImportLookupRepository(JdbcTemplate jdbc, ReferenceCache referenceCache) {
+        this.jdbc = jdbc;
+        this.referenceCache = referenceCache;
+    }
+
+    public List<CategoryRow> categoriesOfUser(Long userId) {
+        return jdbc.query("select c.id, c.type, c.name from category c where c.user_id = ?",
+                (rs, i) -> new CategoryRow(rs.getLong(1), TransactionType.valueOf(rs.getString(2)), rs.getString(3)),
+                userId);
+    }
+
+    public List<SubcategoryRow> subcategoriesOfUser(Long userId) {
+        return jdbc.query("""
+                        select s.id, s.category_id, s.name
+                        from subcategory s
+                        join category c on c.id = s.category_id
+                        where c.user_id = ?
+                        """,
+                (rs, i) -> new SubcategoryRow(rs.getLong(1), rs.getLong(2), rs.getString(3)),
+                userId);
+    }
+
+    /**
+     * How many of the user's transactions carry each fingerprint (generated column {@code tx.fingerprint}).
+     * Reads the (user_id, fingerprint) index only.
+     */
+    public Map<Long, Integer> fingerprintCounts(Long userId) {
+        Map<Long, Integer> counts = new HashMap<>();
+        jdbc.query("select t.fingerprint, count(*) from tx t where t.user_id = ? group by t.fingerprint",
+                (RowCallbackHandler) rs -> counts.put(rs.getLong(1), rs.getInt(2)),
+                userId);
+        return counts;
+    }
+
+    /**
+     * Creates whichever of the given (type, name) categories the user does not have yet, in one statement,
+     * and returns all of them with their ids.
+     */
+    public List<CategoryRow> upsertCategories(Long userId, Collection<CategoryRow> keys) {
+        String[] types = keys.stream().map(k -> k.type().name()).toArray(String[]::new);
+        String[] names = keys.stream().map(CategoryRow::name).toArray(String[]::new);
+
+        int inserted = jdbc.update("""
+                insert into category (id, user_id, type, name)
+                select nextval('category_seq'), ?, x.type, x.name
+                from unnest(cast(? as text[]), cast(? as text[])) as x(type, name)
+                on conflict (user_id, type, name) do nothing
+                """, userId, types, names);
+        if (inserted > 0) referenceCache.categoriesInserted();
+
+        // отдельным запросом: видит и строки, которые параллельный импорт вставил раньше нас
+        return jdbc.query("""
+                        select c.id, c.type, c.name
+                        from category c
+                        join unnest(cast(? as text[]), cast(? as text[])) as x(type, name)
+                          on c.type = x.type and c.name = x.name
+                        where c.user_id = ?
+                        """,
+                (rs, i) -> new CategoryRow(rs.getLong(1), TransactionType.valueOf(rs.getString(2)), rs.getString(3)),
+                types, names, userId);
+    }
+
+    /**
+     * Same as {@link #upsertCategories} for (category id, name) subcategory keys.
+     */
+    public List<SubcategoryRow> upsertSubcategories(Collection<SubcategoryRow> keys) {
+        Long[] categoryIds = keys.stream().map(SubcategoryRow::categoryId).toArray(Long[]::new);
+        String[] names = keys.stream().map(SubcategoryRow::name).toArray(String[]::new);
+
+        int inserted = jdbc.update("""
+                insert into subcategory (id, category_id, name)
+                select nextval('subcategory_seq'), x.category_id, x.name
+                from unnest(cast(? as bigint[]), cast(? as text[])) as x(category_id, name)
+                on conflict (category_id, name) do nothing
+                """, categoryIds, names);
+        if (inserted > 0) referenceCache.categoriesInserted();
+
+        return jdbc.query("""
+                        select s.id, s.category_id, s.name
+                        from subcategory s
+                        join unnest(cast(? as bigint[]), cast(? as text[])) as x(category_id, name)
+                          on s.category_id = x.category_id and s.name = x.name
+                        """,
+                (rs, i) -> new SubcategoryRow(rs.getLong(1), rs.getLong(2), rs.getString(3)),
+                categoryIds, names);
+    }
+}
@@ -0,0 +1,168 @@
+package org.fin.walley.repo;
+
+import jakarta.persistence.QueryHint;
+import org.fin.walley.domain.MonthlyCategoryTotal;
+import org.fin.walley.domain.TransactionType;
+import org.fin.walley.view.CategoryTotalView;
+import org.fin.walley.view.SubcategoryTotalView;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+
+public interface MonthlyCategoryTotalRepository extends JpaRepository<MonthlyCategoryTotal, Long> {
+
+    // --------- отчёты: читают только агрегаты ---------
+
+    @Query("""
+            select new org.fin.walley.view.CategoryTotalView(c.id, c.name, sum(m.total), sum(m.txCount))
+            from MonthlyCategoryTotal m
+            join m.category c
+            where m.user.id = :userId
+              and m.type = :type
+              and m.month between :fromMonth and :toMonth
+            group by c.id, c.name
+            having sum(m.txCount) > 0
+            order by sum(m.total) desc, c.name asc
+           """)
+    List<CategoryTotalView> topCategories(@Param("userId") Long userId,
+                                          @Param("type") TransactionType type,
+                                          @Param("fromMonth") LocalDate fromMonth,
+                                          @Param("toMonth") LocalDate toMonth,
+                                          Limit limit);
+
+    @Query("""
+            select new org.fin.walley.view.CategoryTotalView(c.id, c.name, sum(m.total), sum(m.txCount))
+            from MonthlyCategoryTotal m
+            join m.category c
+            where m.user.id = :userId
+              and m.type = :type
+              and m.month = :month
+            group by c.id, c.name
+            having sum(m.txCount) > 0
+           """)
+    List<CategoryTotalView> categoryTotalsForMonth(@Param("userId") Long userId,
+                                                   @Param("type") TransactionType type,
+                                                   @Param("month") LocalDate month);
+
+    @Query("""
+            select new org.fin.walley.view.SubcategoryTotalView(s.id, s.name, sum(m.total), sum(m.txCount))
+            from MonthlyCategoryTotal m
+            left join m.subcategory s
+            where m.user.id = :userId
+              and m.category.id = :categoryId
+              and m.month between :fromMonth and :toMonth
+            group by s.id, s.name
+            having sum(m.txCount) > 0
+            order by sum(m.total) desc
+           """)
+    List<SubcategoryTotalView> subcategoryBreakdown(@Param("userId") Long userId,
+                                                    @Param("categoryId") Long categoryId,
+                                                    @Param("fromMonth") LocalDate fromMonth,
+                                                    @Param("toMonth") LocalDate toMonth);
+
+    // --------- сопровождение агрегатов (LedgerService) ---------
+
+    @Modifying(flushAutomatically = true)
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "monthly_category_total"))
+    @Query(value = """
+            insert into monthly_category_total (user_id, month, type, category_id, subcategory_id, total, tx_count)
+            values (:userId, :month, :type, :categoryId, cast(:subcategoryId as bigint), :amount, :count)
+            on conflict (user_id, month, type, category_id, (coalesce(subcategory_id, 0))) do update
+               set total = monthly_category_total.total + excluded.total,
+                   tx_count = monthly_category_total.tx_count + excluded.tx_count
+           """, nativeQuery = true)
+    void addDelta(@Param("userId") Long userId,
+                  @Param("month") LocalDate month,
+                  @Param("type") String type,
+                  @Param("categoryId") Long categoryId,
+                  @Param("subcategoryId") Long subcategoryId,
+                  @Param("amount") BigDecimal amount,
+                  @Param("count") long count);
+
+    /**
+     * Set-based {@link #addDelta}: adds the given (freshly inserted) transactions in one statement.
+     */
+    @Modifying(flushAutomatically = true)
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "monthly_category_total"))
+    @Query(value = """
+            insert into monthly_category_total (user_id, month, type, category_id, subcategory_id, total, tx_count)
+            select t.user_id,
+                   cast(date_trunc('month', cast(t.date as timestamp)) as date),
+                   t.type,
+                   t.category_id,
+                   t.subcategory_id,
+                   sum(t.amount),
+                   count(*)
+            from tx t
+            where t.id in (:txIds)
+              and t.category_id is not null
+            group by 1, 2, 3, 4, 5
+            on conflict (user_id, month, type, category_id, (coalesce(subcategory_id, 0))) do update
+               set total = monthly_category_total.total + excluded.total,
+                   tx_count = monthly_category_total.tx_count + excluded.tx_count
+           """, nativeQuery = true)
+    int addTransactions(@Param("txIds") Collection<Long> txIds);
+
+    /**
+     * Same as {@link #addTransactions} for the rows listed in the bulk-import ids table
+     * ({@code BulkImportRepository.IDS_TABLE}); runs in the import's transaction.
+     */
+    @Modifying(flushAutomatically = true)
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "monthly_category_total"))
+    @Query(value = """
+            insert into monthly_category_total (user_id, month, type, category_id, subcategory_id, total, tx_count)
+            select t.user_id,
+                   cast(date_trunc('month', cast(t.date as timestamp)) as date),
+                   t.type,
+                   t.category_id,
+                   t.subcategory_id,
+                   sum(t.amount),
+                   count(*)
+            from tx t
+            join tx_import_ids i on i.id = t.id
+            where t.category_id is not null
+            group by 1, 2, 3, 4, 5
+            on conflict (user_id, month, type, category_id, (coalesce(subcategory_id, 0))) do update
+               set total = monthly_category_total.total + excluded.total,
+                   tx_count = monthly_category_total.tx_count + excluded.tx_count
+           """, nativeQuery = true)
+    int addBulkImported();
+
+    /**
+     * Folds the subcategory's rows into the "no subcategory" bucket of the same category,
+     * mirroring {@code TransactionRepository.clearSubcategory}. Follow with {@link #deleteAllForSubcategory}.
+     */
+    @Modifying(flushAutomatically = true)
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "monthly_category_total"))
+    @Query(value = """
+            insert into monthly_category_total (user_id, month, type, category_id, subcategory_id, total, tx_count)
+            select m.user_id, m.month, m.type, m.category_id, null, m.total, m.tx_count
+            from monthly_category_total m
+            where m.subcategory_id = :subId
+            on conflict (user_id, month, type, category_id, (coalesce(subcategory_id, 0))) do update
+               set total = monthly_category_total.total + excluded.total,
+                   tx_count = monthly_category_total.tx_count + excluded.tx_count
+           """, nativeQuery = true)
+    int foldSubcategory(@Param("subId") Long subId);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("delete from MonthlyCategoryTotal m where m.subcategory.id = :subId")
+    int deleteAllForSubcategory(@Param("subId") Long subId);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("delete from MonthlyCategoryTotal m where m.category.id = :categoryId")
+    int deleteAllForCategory(@Param("categoryId") Long categoryId);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("delete from MonthlyCategoryTotal m where m.user.id = :userId")
+    int deleteAllForUser(@Param("userId") Long userId);
+}
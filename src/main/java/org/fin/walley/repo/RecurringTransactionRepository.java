@@ -0,0 +1,127 @@
+package org.fin.walley.repo;
+
+import jakarta.persistence.QueryHint;
+import org.fin.walley.domain.RecurringTransaction;
+import org.fin.walley.view.RecurringView;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+public interface RecurringTransactionRepository extends JpaRepository<RecurringTransaction, Long> {
+
+    Optional<RecurringTransaction> findByIdAndUserId(Long id, Long userId);
+
+    @Query("""
+           select new org.fin.walley.view.RecurringView(
+                  r.id, r.type, r.amount, c.id, c.name, s.id, s.name, r.note,
+                  r.frequency, r.startDate, r.endDate, r.nextDue, r.active)
+           from RecurringTransaction r
+           join r.category c
+           left join r.subcategory s
+           where r.user.id = :userId
+           order by r.nextDue asc, r.id asc
+           """)
+    List<RecurringView> findViewsByUserId(@Param("userId") Long userId);
+
+    // --------- материализация (все пользователи, пачками по id) ---------
+
+    @Query("""
+           select r.id
+           from RecurringTransaction r
+           where r.active = true
+             and r.nextDue <= :today
+             and r.id > :afterId
+           order by r.id asc
+           """)
+    List<Long> findDueIds(@Param("today") LocalDate today,
+                          @Param("afterId") Long afterId,
+                          Limit limit);
+
+    /**
+     * Locks those of the given templates that are still due and not held by another run; returns their ids.
+     * A concurrent materialisation skips the locked rows, and once this transaction commits their
+     * {@code next_due} has moved on, so each occurrence is inserted by exactly one run.
+     */
+    @Query(value = """
+            select r.id
+            from recurring_tx r
+            where r.id in (:ids)
+              and r.active
+              and r.next_due <= cast(:today as date)
+            order by r.id
+            for update skip locked
+           """, nativeQuery = true)
+    List<Long> claimDue(@Param("ids") Collection<Long> ids,
+                        @Param("today") LocalDate today);
+
+    @Query("select distinct r.user.id from RecurringTransaction r where r.id in :ids")
+    List<Long> findUserIds(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Creates the current due occurrence of each given template in one statement; returns the new tx ids.
+     * Callers pass only ids from {@link #claimDue}.
+     * <p>
+     * Deliberately not {@code @Modifying}: Spring Data would run it through {@code executeUpdate}, which only
+     * reports a row count, while the RETURNING rows come back like a select's. Nothing needs clearing
+     * afterwards either: the new rows were never loaded into the persistence context.
+     */
+    @Query(value = """
+            insert into tx (id, type, amount, date, category_id, subcategory_id, note, user_id)
+            select nextval('tx_seq'), r.type, r.amount, r.next_due, r.category_id, r.subcategory_id, r.note, r.user_id
+            from recurring_tx r
+            where r.id in (:ids)
+              and r.active
+              and r.next_due <= cast(:today as date)
+            returning id
+           """, nativeQuery = true)
+    List<Long> insertDueOccurrences(@Param("ids") Collection<Long> ids,
+                                    @Param("today") LocalDate today);
+
+    /**
+     * Moves the same templates {@link #insertDueOccurrences} just used to their next occurrence,
+     * deactivating those that run past their end date.
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "recurring_tx"))
+    @Query(value = """
+            update recurring_tx r
+               set occurrences = r.occurrences + 1,
+                   next_due = n.next_due,
+                   active = (r.end_date is null or n.next_due <= r.end_date)
+              from (select x.id,
+                           case when x.frequency = 'WEEKLY'
+                                then x.start_date + 7 * (x.occurrences + 1)
+                                else cast(x.start_date + (x.occurrences + 1) * interval '1 month' as date)
+                           end as next_due
+                      from recurring_tx x
+                     where x.id in (:ids)) n
+             where r.id = n.id
+               and r.active
+               and r.next_due <= cast(:today as date)
+           """, nativeQuery = true)
+    int advance(@Param("ids") Collection<Long> ids,
+                @Param("today") LocalDate today);
+
+    // --------- каскады удаления ---------
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("delete from RecurringTransaction r where r.category.id = :categoryId")
+    int deleteAllForCategory(@Param("categoryId") Long categoryId);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update RecurringTransaction r set r.subcategory = null where r.subcategory.id = :subId")
+    int clearSubcategory(@Param("subId") Long subId);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("delete from RecurringTransaction r where r.user.id = :userId")
+    int deleteAllForUser(@Param("userId") Long userId);
+}
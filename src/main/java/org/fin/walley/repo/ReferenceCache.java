@@ -0,0 +1,42 @@
+package org.fin.walley.repo;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.Cache;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Upkeep of the second-level cache (Category, Subcategory, AppUser and their id/name lookup queries) for
+ * writes Hibernate does not see. JPA saves and JPQL bulk deletes keep the cache right by themselves; native
+ * DML declares its table ({@code HibernateHints.HINT_NATIVE_SPACES}) so it only invalidates that table instead
+ * of the whole cache. JDBC and COPY inserts of categories bypass Hibernate: new rows cannot make a cached
+ * entity stale, only a cached "not found" of an id lookup, so the query results are dropped when such an
+ * insert is made and again when it commits (a lookup running meanwhile may have cached the old answer).
+ * Lookups by name are existence checks and stay out of the query cache altogether: the importer creates
+ * categories by name, and a cached miss could outlive the eviction until its TTL.
+ */
+@Component
+public class ReferenceCache {
+
+    private final EntityManagerFactory emf;
+
+    public ReferenceCache(EntityManagerFactory emf) {
+        this.emf = emf;
+    }
+
+    /** Call inside the transaction that inserted category or subcategory rows over JDBC. */
+    public void categoriesInserted() {
+        Cache cache = emf.getCache().unwrap(Cache.class);
+        cache.evictDefaultQueryRegion();
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                cache.evictDefaultQueryRegion();
+            }
+        });
+    }
+}
@@ -1,9 +1,13 @@
 package org.fin.walley.repo;
 
+import jakarta.persistence.QueryHint;
 import org.fin.walley.domain.Subcategory;
+import org.fin.walley.view.SubcategoryView;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 
 import java.util.List;
@@ -11,11 +15,29 @@ import java.util.Optional;
 
 public interface SubcategoryRepository extends JpaRepository<Subcategory, Long> {
 
-    List<Subcategory> findByCategoryIdAndCategoryUserUsernameOrderByNameAsc(Long categoryId, String username);
+    List<Subcategory> findByCategoryIdAndCategoryUserIdOrderByNameAsc(Long categoryId, Long userId);
 
-    Optional<Subcategory> findByIdAndCategoryUserUsername(Long id, String username);
+    @Query("""
+           select new org.fin.walley.view.SubcategoryView(s.id, s.name)
+           from Subcategory s
+           where s.category.id = :categoryId
+             and s.category.user.id = :userId
+           order by s.name asc
+           """)
+    List<SubcategoryView> findViewsByCategory(@Param("userId") Long userId,
+                                              @Param("categoryId") Long categoryId);
+
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
+    Optional<Subcategory> findByIdAndCategoryUserId(Long id, Long userId);
+
+    // без кэша запросов, как CategoryRepository.findByUserIdAndTypeAndName
+    Optional<Subcategory> findByCategoryIdAndNameAndCategoryUserId(Long categoryId, String name, Long userId);
+
+    @Query("select distinct s.name from Subcategory s order by s.name asc")
+    List<String> findAllNames();
 
-    Optional<Subcategory> findByCategoryIdAndNameAndCategoryUserUsername(Long categoryId, String name, String username);
+    @Query("select distinct s.name from Subcategory s where s.category.user.id = :userId order by s.name asc")
+    List<String> findNamesByUserId(@Param("userId") Long userId);
 
     @Modifying(flushAutomatically = true, clearAutomatically = true)
     @Query("delete from Subcategory s where s.category.user.id = :userId")
@@ -25,8 +47,8 @@ public interface SubcategoryRepository extends JpaRepository<Subcategory, Long>
     @Query("""
            delete from Subcategory s
             where s.category.id = :categoryId
-              and s.category.user.username = :username
+              and s.category.user.id = :userId
            """)
-    int deleteAllForCategory(@Param("username") String username,
+    int deleteAllForCategory(@Param("userId") Long userId,
                              @Param("categoryId") Long categoryId);
 }
\ No newline at end of file
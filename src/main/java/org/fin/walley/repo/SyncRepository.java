@@ -0,0 +1,159 @@
+package org.fin.walley.repo;
+
+import org.fin.walley.domain.TransactionType;
+import org.fin.walley.view.SyncView.CategoryChange;
+import org.fin.walley.view.SyncView.Deletion;
+import org.fin.walley.view.SyncView.SubcategoryChange;
+import org.fin.walley.view.SyncView.TransactionChange;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Reads of the change-tracking columns maintained by the sync triggers in V1__baseline.sql
+ * ({@code revision} on tx/category/subcategory, {@code user_sync}, {@code sync_tombstone}), and the ordered
+ * {@code user_sync} locking that writes spanning several users take up front.
+ * Plain JDBC because the entities do not map {@code revision}. All range reads take the half-open
+ * revision window (since, upto]; the keyset ones continue after (afterRevision, afterId).
+ */
+@Repository
+public class SyncRepository {
+
+    /** Current revision of the user and the oldest one a delta can still start from. */
+    public record SyncState(long revision, long minRevision) {}
+
+    /** {@code id} is the tombstone's own key, for the keyset cursor. */
+    public record TombstoneRow(long id, Deletion deletion) {}
+
+    private final JdbcTemplate jdbc;
+
+    public SyncRepository(JdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    public SyncState state(Long userId) {
+        return jdbc.query("select s.revision, s.min_revision from user_sync s where s.user_id = ?",
+                        (rs, i) -> new SyncState(rs.getLong(1), rs.getLong(2)),
+                        userId)
+                .stream().findFirst()
+                // пользователь ещё ничего не менял
+                .orElse(new SyncState(0, 0));
+    }
+
+    /**
+     * Locks the {@code user_sync} rows of the given users in ascending user id order, creating missing rows.
+     * A transaction that writes data of several users calls this before its first write; otherwise the sync
+     * triggers lock the rows in whatever order the rows arrive, and two such transactions over an
+     * overlapping set of users can deadlock.
+     */
+    public void lockUsers(Collection<Long> userIds) {
+        if (userIds.isEmpty()) return;
+        Long[] ids = userIds.stream().distinct().sorted().toArray(Long[]::new);
+        jdbc.update("""
+                insert into user_sync (user_id)
+                select x.user_id from unnest(cast(? as bigint[])) as x(user_id)
+                order by x.user_id
+                on conflict (user_id) do nothing
+                """, (Object) ids);
+        // FOR UPDATE над сортировкой: строки блокируются в порядке выдачи
+        jdbc.query("select s.user_id from user_sync s where s.user_id = any(cast(? as bigint[])) order by s.user_id for update",
+                (RowCallbackHandler) rs -> {}, (Object) ids);
+    }
+
+    public List<CategoryChange> categories(Long userId, long since, long upto) {
+        return jdbc.query("""
+                        select c.id, c.type, c.name, c.revision
+                        from category c
+                        where c.user_id = ? and c.revision > ? and c.revision <= ?
+                        order by c.id
+                        """,
+                (rs, i) -> new CategoryChange(rs.getLong(1), TransactionType.valueOf(rs.getString(2)),
+                        rs.getString(3), rs.getLong(4)),
+                userId, since, upto);
+    }
+
+    public List<SubcategoryChange> subcategories(Long userId, long since, long upto) {
+        return jdbc.query("""
+                        select s.id, s.category_id, s.name, s.revision
+                        from subcategory s
+                        join category c on c.id = s.category_id
+                        where c.user_id = ? and s.revision > ? and s.revision <= ?
+                        order by s.id
+                        """,
+                (rs, i) -> new SubcategoryChange(rs.getLong(1), rs.getLong(2), rs.getString(3), rs.getLong(4)),
+                userId, since, upto);
+    }
+
+    public List<TransactionChange> transactions(Long userId, long since, long upto,
+                                                long afterRevision, long afterId, int limit) {
+        return jdbc.query("""
+                        select t.id, t.type, t.amount, t.date, t.category_id, t.subcategory_id, t.note, t.revision
+                        from tx t
+                        where t.user_id = ? and t.revision > ? and t.revision <= ?
+                          and (t.revision, t.id) > (?, ?)
+                        order by t.revision, t.id
+                        limit ?
+                        """,
+                (rs, i) -> new TransactionChange(
+                        rs.getLong(1),
+                        TransactionType.valueOf(rs.getString(2)),
+                        rs.getBigDecimal(3),
+                        rs.getObject(4, LocalDate.class),
+                        rs.getObject(5, Long.class),
+                        rs.getObject(6, Long.class),
+                        rs.getString(7),
+                        rs.getLong(8)),
+                userId, since, upto, afterRevision, afterId, limit);
+    }
+
+    public List<TombstoneRow> tombstones(Long userId, long since, long upto,
+                                          long afterRevision, long afterId, int limit) {
+        return jdbc.query("""
+                        select d.entity, d.entity_id, d.revision, d.id
+                        from sync_tombstone d
+                        where d.user_id = ? and d.revision > ? and d.revision <= ?
+                          and (d.revision, d.id) > (?, ?)
+                        order by d.revision, d.id
+                        limit ?
+                        """,
+                (rs, i) -> new TombstoneRow(rs.getLong(4), new Deletion(rs.getString(1), rs.getLong(2), rs.getLong(3))),
+                userId, since, upto, afterRevision, afterId, limit);
+    }
+
+    /**
+     * Deletes tombstones created before {@code cutoff} and raises {@code min_revision} of the affected users
+     * to the newest revision removed, in one statement. Returns the number of tombstones deleted.
+     */
+    public int pruneTombstones(Instant cutoff) {
+        // строки user_sync — в том же порядке, что и lockUsers: UPDATE ниже берёт их в порядке плана
+        jdbc.query("""
+                        select s.user_id
+                        from user_sync s
+                        where s.user_id in (select d.user_id from sync_tombstone d where d.created_at < ?)
+                        order by s.user_id
+                        for update
+                        """,
+                (RowCallbackHandler) rs -> {}, Timestamp.from(cutoff));
+        return jdbc.queryForObject("""
+                        with pruned as (
+                            delete from sync_tombstone d
+                            where d.created_at < ?
+                            returning d.user_id, d.revision
+                        ),
+                        raised as (
+                            update user_sync s
+                            set min_revision = greatest(s.min_revision, p.max_revision)
+                            from (select user_id, max(revision) as max_revision from pruned group by user_id) p
+                            where s.user_id = p.user_id
+                        )
+                        select count(*) from pruned
+                        """,
+                Integer.class, Timestamp.from(cutoff));
+    }
+}
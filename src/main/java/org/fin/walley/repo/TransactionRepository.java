@@ -1,42 +1,70 @@
 package org.fin.walley.repo;
 
+import jakarta.persistence.QueryHint;
 import org.fin.walley.domain.Transaction;
-import org.fin.walley.domain.TransactionType;
+import org.fin.walley.view.AdminTxRow;
+import org.fin.walley.view.TransactionView;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
-public interface TransactionRepository extends JpaRepository<Transaction, Long> {
+public interface TransactionRepository extends JpaRepository<Transaction, Long>, JpaSpecificationExecutor<Transaction>,
+        TransactionStreamRepository {
 
-    List<Transaction> findByUserUsernameOrderByDateDescIdDesc(String username);
+    // --------- read model для списков: имена категорий берутся в том же SELECT ---------
 
-    Optional<Transaction> findByIdAndUserUsername(Long id, String username);
+    @Query("""
+            select new org.fin.walley.view.TransactionView(
+                   t.id, t.type, t.amount, t.date, c.id, c.name, s.id, s.name, t.note)
+            from Transaction t
+            left join t.category c
+            left join t.subcategory s
+            where t.id in :ids
+           """)
+    List<TransactionView> findViewsByIdIn(@Param("ids") Collection<Long> ids);
+
+    // --------- keyset-пагинация по (date desc, id desc) ---------
+    // весь список целиком не читаем: экспорт идёт курсором (TransactionService.streamForUser)
 
     @Query("""
-            select coalesce(sum(t.amount), 0)
+            select new org.fin.walley.view.TransactionView(
+                   t.id, t.type, t.amount, t.date, c.id, c.name, s.id, s.name, t.note)
             from Transaction t
-            where t.user.username = :username and t.type = :type
+            left join t.category c
+            left join t.subcategory s
+            where t.user.id = :userId
+            order by t.date desc, t.id desc
            """)
-    BigDecimal sumAmountByUserAndType(@Param("username") String username,
-                                      @Param("type") TransactionType type);
+    List<TransactionView> findFirstPage(@Param("userId") Long userId, Limit limit);
 
     @Query("""
-            select coalesce(sum(t.amount), 0)
+            select new org.fin.walley.view.TransactionView(
+                   t.id, t.type, t.amount, t.date, c.id, c.name, s.id, s.name, t.note)
             from Transaction t
-            where t.user.username = :username
-              and t.type = :type
-              and t.date <= :asOf
+            left join t.category c
+            left join t.subcategory s
+            where t.user.id = :userId
+              and (t.date < :date or (t.date = :date and t.id < :id))
+            order by t.date desc, t.id desc
            """)
-    BigDecimal sumAmountByUserAndTypeUpToDate(@Param("username") String username,
-                                              @Param("type") TransactionType type,
-                                              @Param("asOf") LocalDate asOf);
+    List<TransactionView> findPageAfter(@Param("userId") Long userId,
+                                        @Param("date") LocalDate date,
+                                        @Param("id") Long id,
+                                        Limit limit);
+
+    Optional<Transaction> findByIdAndUserId(Long id, Long userId);
 
     @Modifying(flushAutomatically = true, clearAutomatically = true)
     @Transactional
@@ -51,10 +79,10 @@ public interface TransactionRepository extends JpaRepository<Transaction, Long>
     @Query("""
            update Transaction t
               set t.subcategory = null
-            where t.user.username = :username
+            where t.user.id = :userId
               and t.subcategory.id = :subId
            """)
-    int clearSubcategory(@Param("username") String username,
+    int clearSubcategory(@Param("userId") Long userId,
                          @Param("subId") Long subId);
 
 
@@ -62,10 +90,10 @@ public interface TransactionRepository extends JpaRepository<Transaction, Long>
     @Transactional
     @Query("""
            delete from Transaction t
-            where t.user.username = :username
+            where t.user.id = :userId
               and t.category.id = :categoryId
            """)
-    int clearCategory(@Param("username") String username,
+    int clearCategory(@Param("userId") Long userId,
                       @Param("categoryId") Long categoryId);
 
 
@@ -73,19 +101,44 @@ public interface TransactionRepository extends JpaRepository<Transaction, Long>
     @Transactional
     @Query("""
            delete from Transaction t
-            where t.user.username = :username
+            where t.user.id = :userId
               and t.category.id = :categoryId
            """)
-    int deleteAllForCategory(@Param("username") String username,
+    int deleteAllForCategory(@Param("userId") Long userId,
                              @Param("categoryId") Long categoryId);
 
+    /**
+     * Ids of a ranked full-text match over {@code tx.note_tsv} (see V1__baseline.sql), served by the
+     * (user_id, note_tsv) GIN index. {@code tsQuery} is a {@code to_tsquery('simple', ...)} expression.
+     */
+    @Query(value = """
+           select t.id
+           from tx t
+           where t.user_id = :userId
+             and t.note_tsv @@ to_tsquery('simple', :tsQuery)
+           order by ts_rank(t.note_tsv, to_tsquery('simple', :tsQuery)) desc, t.date desc, t.id desc
+           limit :limit offset :offset
+           """, nativeQuery = true)
+    List<Long> searchNoteIds(@Param("userId") Long userId,
+                             @Param("tsQuery") String tsQuery,
+                             @Param("limit") int limit,
+                             @Param("offset") long offset);
+
+    /**
+     * Every transaction of every user as flat rows, read from a server-side cursor in fetch-size batches.
+     * DTO rows never enter the persistence context. Consume (and close) inside a transaction.
+     */
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
     @Query("""
-           select t
+           select new org.fin.walley.view.AdminTxRow(u.username, t.type, t.amount, t.date, c.name, s.name, t.note)
            from Transaction t
-           join fetch t.user u
-           left join fetch t.category c
-           left join fetch t.subcategory s
+           join t.user u
+           left join t.category c
+           left join t.subcategory s
            order by u.username asc, t.date desc, t.id desc
            """)
-    List<Transaction> findAllForAdminExport();
+    Stream<AdminTxRow> streamAllForAdminExport();
 }
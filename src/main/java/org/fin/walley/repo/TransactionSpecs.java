@@ -0,0 +1,88 @@
+package org.fin.walley.repo;
+
+import jakarta.persistence.criteria.JoinType;
+import org.fin.walley.domain.Transaction;
+import org.fin.walley.domain.TransactionType;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.Locale;
+
+/**
+ * Building blocks for criteria queries over {@link Transaction}.
+ * Every predicate is pushed down into the single SELECT built by {@link TransactionRepository}.
+ */
+public final class TransactionSpecs {
+
+    private TransactionSpecs() {
+    }
+
+    // по внешнему ключу tx.user_id, без join на app_user
+    public static Specification<Transaction> ownedBy(Long userId) {
+        return (root, query, cb) -> cb.equal(root.get("user").get("id"), userId);
+    }
+
+    public static Specification<Transaction> dateFrom(LocalDate from) {
+        return (root, query, cb) -> cb.greaterThanOrEqualTo(root.get("date"), from);
+    }
+
+    public static Specification<Transaction> dateTo(LocalDate to) {
+        return (root, query, cb) -> cb.lessThanOrEqualTo(root.get("date"), to);
+    }
+
+    public static Specification<Transaction> ofType(TransactionType type) {
+        return (root, query, cb) -> cb.equal(root.get("type"), type);
+    }
+
+    public static Specification<Transaction> categoryIn(Collection<Long> categoryIds) {
+        return (root, query, cb) -> root.get("category").get("id").in(categoryIds);
+    }
+
+    public static Specification<Transaction> subcategoryIn(Collection<Long> subcategoryIds) {
+        return (root, query, cb) -> root.get("subcategory").get("id").in(subcategoryIds);
+    }
+
+    public static Specification<Transaction> amountAtLeast(BigDecimal min) {
+        return (root, query, cb) -> cb.greaterThanOrEqualTo(root.get("amount"), min);
+    }
+
+    public static Specification<Transaction> amountAtMost(BigDecimal max) {
+        return (root, query, cb) -> cb.lessThanOrEqualTo(root.get("amount"), max);
+    }
+
+    public static Specification<Transaction> noteContains(String text) {
+        String pattern = "%" + escapeLike(text.toLowerCase(Locale.ROOT)) + "%";
+        return (root, query, cb) -> cb.like(cb.lower(root.get("note")), pattern, '\\');
+    }
+
+    /**
+     * Seek predicate for keyset paging in (date desc, id desc) order: rows strictly after (date, id).
+     */
+    public static Specification<Transaction> after(LocalDate date, Long id) {
+        return (root, query, cb) -> cb.or(
+                cb.lessThan(root.get("date"), date),
+                cb.and(cb.equal(root.get("date"), date), cb.lessThan(root.get("id"), id))
+        );
+    }
+
+    /**
+     * Fetch-joins category and subcategory so the rows can be mapped to a read model without extra SELECTs.
+     * Skipped for count queries, where a fetch join is not allowed.
+     */
+    public static Specification<Transaction> fetchCategories() {
+        return (root, query, cb) -> {
+            Class<?> resultType = query.getResultType();
+            if (resultType != Long.class && resultType != long.class) {
+                root.fetch("category", JoinType.LEFT);
+                root.fetch("subcategory", JoinType.LEFT);
+            }
+            return cb.conjunction();
+        };
+    }
+
+    private static String escapeLike(String s) {
+        return s.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+}
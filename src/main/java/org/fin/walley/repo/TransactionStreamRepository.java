@@ -0,0 +1,21 @@
+package org.fin.walley.repo;
+
+import org.fin.walley.domain.Transaction;
+import org.fin.walley.view.TransactionView;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.stream.Stream;
+
+/**
+ * Forward-only streaming reads over tx for exports. Must be consumed (and closed) inside a transaction.
+ */
+public interface TransactionStreamRepository {
+
+    /**
+     * Rows are read from a server-side cursor in fetch-size batches and each entity is detached once mapped,
+     * so memory stays flat however many rows match. {@code spec} should include
+     * {@link TransactionSpecs#fetchCategories()}.
+     */
+    Stream<TransactionView> streamViews(Specification<Transaction> spec, Sort sort);
+}
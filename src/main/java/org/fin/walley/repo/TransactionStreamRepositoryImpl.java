@@ -0,0 +1,50 @@
+package org.fin.walley.repo;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import org.fin.walley.domain.Transaction;
+import org.fin.walley.view.TransactionView;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.query.QueryUtils;
+
+import java.util.stream.Stream;
+
+class TransactionStreamRepositoryImpl implements TransactionStreamRepository {
+
+    // PostgreSQL отдаёт строки порциями только при fetch size > 0 и autocommit=false (т.е. внутри транзакции)
+    static final int FETCH_SIZE = 1000;
+
+    private final EntityManager em;
+
+    TransactionStreamRepositoryImpl(EntityManager em) {
+        this.em = em;
+    }
+
+    @Override
+    public Stream<TransactionView> streamViews(Specification<Transaction> spec, Sort sort) {
+        CriteriaBuilder cb = em.getCriteriaBuilder();
+        CriteriaQuery<Transaction> query = cb.createQuery(Transaction.class);
+        Root<Transaction> root = query.from(Transaction.class);
+
+        Predicate where = spec.toPredicate(root, query, cb);
+        if (where != null) {
+            query.where(where);
+        }
+        query.select(root).orderBy(QueryUtils.toOrders(sort, root, cb));
+
+        return em.createQuery(query)
+                .setHint(HibernateHints.HINT_FETCH_SIZE, FETCH_SIZE)
+                .setHint(HibernateHints.HINT_READ_ONLY, true)
+                .getResultStream()
+                .map(t -> {
+                    TransactionView v = TransactionView.of(t);
+                    em.detach(t);
+                    return v;
+                });
+    }
+}
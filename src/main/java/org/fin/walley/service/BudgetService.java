@@ -0,0 +1,146 @@
+package org.fin.walley.service;
+
+import org.fin.walley.domain.*;
+import org.fin.walley.repo.BudgetCounterRepository;
+import org.fin.walley.repo.BudgetRepository;
+import org.fin.walley.repo.AppUserRepository;
+import org.fin.walley.repo.CategoryRepository;
+import org.fin.walley.repo.SubcategoryRepository;
+import org.fin.walley.view.BudgetStatusRow;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Budgets and their status. Status reads the running counters maintained by LedgerService,
+ * so it costs one row per budget and never sums tx.
+ */
+@Service
+public class BudgetService {
+
+    private static final ZoneId ZONE = ZoneId.of("Europe/Warsaw");
+
+    private final BudgetRepository budgets;
+    private final BudgetCounterRepository counters;
+    private final CategoryRepository catRepo;
+    private final SubcategoryRepository subRepo;
+    private final AppUserRepository users;
+
+    public BudgetService(BudgetRepository budgets,
+                         BudgetCounterRepository counters,
+                         CategoryRepository catRepo,
+                         SubcategoryRepository subRepo,
+                         AppUserRepository users) {
+        this.budgets = budgets;
+        this.counters = counters;
+        this.catRepo = catRepo;
+        this.subRepo = subRepo;
+        this.users = users;
+    }
+
+    public enum State { OK, WARNING, OVER }
+
+    public record BudgetStatus(
+            Long budgetId,
+            Long categoryId,
+            String categoryName,
+            Long subcategoryId,
+            String subcategoryName,
+            BudgetPeriod period,
+            LocalDate periodStart,
+            BigDecimal limit,
+            BigDecimal spent,
+            BigDecimal remaining,
+            int percentUsed,
+            State state
+    ) {}
+
+    @Transactional(readOnly = true)
+    public List<BudgetStatus> statusForUser(Long userId) {
+        return status(userId, null);
+    }
+
+    /**
+     * Budgets of one category that are at or past their alert threshold; shown after a transaction save.
+     */
+    @Transactional(readOnly = true)
+    public List<BudgetStatus> alertsForCategory(Long userId, Long categoryId) {
+        if (categoryId == null) return List.of();
+        return status(userId, categoryId).stream()
+                .filter(s -> s.state() != State.OK)
+                .toList();
+    }
+
+    @Transactional
+    public Budget create(Long userId, Long categoryId, Long subcategoryIdOrNull,
+                         BudgetPeriod period, BigDecimal limit, int alertPercent) {
+        Category cat = catRepo.findByIdAndUserId(categoryId, userId)
+                .orElseThrow(() -> new IllegalArgumentException("Category not found"));
+        if (cat.getType() != TransactionType.EXPENSE) {
+            throw new IllegalArgumentException("Budgets can only be set on EXPENSE categories");
+        }
+
+        Subcategory sub = null;
+        if (subcategoryIdOrNull != null) {
+            sub = subRepo.findByIdAndCategoryUserId(subcategoryIdOrNull, userId)
+                    .orElseThrow(() -> new IllegalArgumentException("Subcategory not found"));
+            if (!sub.getCategory().getId().equals(cat.getId())) {
+                throw new IllegalArgumentException("Subcategory must belong to selected category");
+            }
+        }
+
+        Budget b = budgets.save(Budget.builder()
+                .user(users.getReferenceById(userId))
+                .category(cat)
+                .subcategory(sub)
+                .period(period)
+                .limitAmount(limit)
+                .alertPercent(alertPercent)
+                .trackedFrom(period.startOf(LocalDate.now(ZONE)))
+                .build());
+
+        // единственный раз, когда бюджет смотрит в tx: стартовые значения счётчиков
+        counters.seed(b.getId(), period.name().toLowerCase(Locale.ROOT), cat.getId(), subcategoryIdOrNull, b.getTrackedFrom());
+        return b;
+    }
+
+    @Transactional
+    public void delete(Long userId, Long id) {
+        Budget b = budgets.findByIdAndUserId(id, userId)
+                .orElseThrow(() -> new IllegalArgumentException("Budget not found"));
+        counters.deleteAllForBudget(b.getId());
+        budgets.deleteById(b.getId());
+    }
+
+    private List<BudgetStatus> status(Long userId, Long categoryIdOrNull) {
+        LocalDate today = LocalDate.now(ZONE);
+        LocalDate weekStart = BudgetPeriod.WEEK.startOf(today);
+        LocalDate monthStart = BudgetPeriod.MONTH.startOf(today);
+
+        return budgets.findStatus(userId, categoryIdOrNull, weekStart, monthStart).stream()
+                .map(r -> toStatus(r, r.period() == BudgetPeriod.WEEK ? weekStart : monthStart))
+                .toList();
+    }
+
+    private static BudgetStatus toStatus(BudgetStatusRow r, LocalDate periodStart) {
+        BigDecimal remaining = r.limitAmount().subtract(r.spent());
+        int percent = r.spent()
+                .multiply(BigDecimal.valueOf(100))
+                .divide(r.limitAmount(), 0, RoundingMode.DOWN)
+                .intValue();
+
+        State state;
+        if (r.spent().compareTo(r.limitAmount()) > 0) state = State.OVER;
+        else if (percent >= r.alertPercent()) state = State.WARNING;
+        else state = State.OK;
+
+        return new BudgetStatus(r.budgetId(), r.categoryId(), r.categoryName(), r.subcategoryId(), r.subcategoryName(),
+                r.period(), periodStart, r.limitAmount(), r.spent(), remaining, percent, state);
+    }
+}
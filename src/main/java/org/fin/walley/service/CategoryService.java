@@ -1,16 +1,23 @@
 package org.fin.walley.service;
 
-import org.fin.walley.domain.AppUser;
 import org.fin.walley.domain.Category;
 import org.fin.walley.domain.TransactionType;
 import org.fin.walley.repo.AppUserRepository;
 import org.fin.walley.repo.CategoryRepository;
+import org.fin.walley.repo.RecurringTransactionRepository;
 import org.fin.walley.repo.SubcategoryRepository;
 import org.fin.walley.repo.TransactionRepository;
+import org.fin.walley.view.CategoryTreeRow;
+import org.fin.walley.view.CategoryTreeView;
+import org.fin.walley.view.CategoryView;
+import org.fin.walley.view.SubcategoryView;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 
 @Service
 public class CategoryService {
@@ -19,56 +26,114 @@ public class CategoryService {
     private final AppUserRepository users;
     private final SubcategoryRepository subRepo;
     private final TransactionRepository txRepo;
+    private final LedgerService ledger;
+    private final RecurringTransactionRepository recurring;
+    private final DataVersionService versions;
 
     public CategoryService(CategoryRepository categories,
                            AppUserRepository users,
                            SubcategoryRepository subRepo,
-                           TransactionRepository txRepo) {
+                           TransactionRepository txRepo,
+                           LedgerService ledger,
+                           RecurringTransactionRepository recurring,
+                           DataVersionService versions) {
         this.categories = categories;
         this.users = users;
         this.subRepo = subRepo;
         this.txRepo = txRepo;
+        this.ledger = ledger;
+        this.recurring = recurring;
+        this.versions = versions;
     }
 
     @Transactional(readOnly = true)
-    public List<Category> listForUser(String username) {
-        return categories.findByUserUsernameOrderByNameAsc(username);
+    public List<Category> listForUser(Long userId) {
+        return categories.findByUserIdOrderByNameAsc(userId);
     }
 
     @Transactional(readOnly = true)
-    public List<Category> listForUserByType(String username, TransactionType type) {
-        return categories.findByUserUsernameAndTypeOrderByNameAsc(username, type);
+    public List<Category> listForUserByType(Long userId, TransactionType type) {
+        return categories.findByUserIdAndTypeOrderByNameAsc(userId, type);
     }
 
     @Transactional(readOnly = true)
-    public Category findOwned(String username, Long id) {
-        return categories.findByIdAndUserUsername(id, username)
+    public List<CategoryView> listViewsForUser(Long userId) {
+        return categories.findViewsByUserId(userId);
+    }
+
+    @Transactional(readOnly = true)
+    public List<CategoryView> listViewsForUserByType(Long userId, TransactionType type) {
+        return categories.findViewsByUserIdAndType(userId, type);
+    }
+
+    /**
+     * The user's whole category tree for both types, from one query. The version is read first, so a change
+     * committed meanwhile makes the returned version stale rather than the data.
+     */
+    @Transactional(readOnly = true)
+    public CategoryTreeView treeForUser(Long userId) {
+        String version = versions.etag(userId);
+
+        Map<TransactionType, List<CategoryTreeView.Node>> byType = new EnumMap<>(TransactionType.class);
+        for (TransactionType t : TransactionType.values()) {
+            byType.put(t, new ArrayList<>());
+        }
+        CategoryTreeView.Node current = null;
+        for (CategoryTreeRow r : categories.findTreeRowsByUserId(userId)) {
+            if (current == null || !current.id().equals(r.categoryId())) {
+                current = new CategoryTreeView.Node(r.categoryId(), r.categoryName(), new ArrayList<>());
+                byType.get(r.type()).add(current);
+            }
+            if (r.subcategoryId() != null) {
+                current.subcategories().add(new SubcategoryView(r.subcategoryId(), r.subcategoryName()));
+            }
+        }
+        return new CategoryTreeView(version, byType);
+    }
+
+    @Transactional(readOnly = true)
+    public Category findOwned(Long userId, Long id) {
+        return categories.findByIdAndUserId(id, userId)
                 .orElseThrow(() -> new IllegalArgumentException("Category not found"));
     }
 
+    // (user, type, name) уникальны — см. uk_category_user_type_name
+    @Transactional(readOnly = true)
+    public boolean nameTaken(Long userId, TransactionType type, String name, Long exceptId) {
+        return categories.findByUserIdAndTypeAndName(userId, type, name)
+                .filter(c -> !c.getId().equals(exceptId))
+                .isPresent();
+    }
+
     @Transactional
-    public Category create(String username, Category c) {
-        AppUser u = users.findByUsername(username)
-                .orElseThrow(() -> new IllegalArgumentException("User not found"));
+    public Category create(Long userId, Category c) {
         c.setId(null);
-        c.setUser(u);
+        // у категории нет другой проверки владельца: сессия удалённого пользователя получила бы нарушение
+        // внешнего ключа вместо понятной ошибки. AppUser в кэше второго уровня, так что обычно это без запроса
+        c.setUser(users.findById(userId)
+                .orElseThrow(() -> new IllegalArgumentException("User not found")));
+        versions.changed(userId);
         return categories.save(c);
     }
 
     @Transactional
-    public Category update(String username, Long id, Category form) {
-        Category c = findOwned(username, id);
+    public Category update(Long userId, Long id, Category form) {
+        Category c = findOwned(userId, id);
         c.setName(form.getName());
         c.setType(form.getType());
+        versions.changed(userId);
         return c;
     }
 
 
     @Transactional
-    public void delete(String username, Long id) {
-        findOwned(username, id);
-        txRepo.clearCategory(username, id);
-        subRepo.deleteAllForCategory(username, id);
+    public void delete(Long userId, Long id) {
+        findOwned(userId, id);
+        recurring.deleteAllForCategory(id);
+        ledger.removeCategory(id);
+        txRepo.clearCategory(userId, id);
+        subRepo.deleteAllForCategory(userId, id);
         categories.deleteById(id);
+        versions.changed(userId);
     }
 }
@@ -0,0 +1,157 @@
+package org.fin.walley.service;
+
+import com.opencsv.CSVReader;
+import com.opencsv.exceptions.CsvValidationException;
+import org.fin.walley.service.ImportExportService.Parsed;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Parse stage of the CSV imports, pipelined:
+ * <ol>
+ *     <li>a reader thread only tokenises records (cheap) and cuts them into blocks of {@link #BLOCK_SIZE}
+ *     at record boundaries, each record keeping the line it started on;</li>
+ *     <li>each block is parsed and checked ({@code valueOf}, {@code BigDecimal}, {@code LocalDate.parse},
+ *     bean validation) on the parse pool;</li>
+ *     <li>the calling thread takes the blocks' futures in submission order from a bounded queue and hands
+ *     rows and row errors on, so the writer sees the file in its original order.</li>
+ * </ol>
+ * The queue bounds the blocks in flight: when the writer falls behind, the reader blocks on it (backpressure),
+ * so memory stays at a few blocks whatever the upload size. {@link ImportProgress} and the sink are only
+ * called from the calling thread.
+ */
+final class CsvPipeline<T> {
+
+    static final int BLOCK_SIZE = 500;
+
+    private record Raw(long line, String[] fields) {}
+
+    // row == null означает ошибку строки
+    private record Outcome<T>(long line, T row, String error) {}
+
+    private static final List<?> END = List.of();
+
+    private final Executor parsePool;
+    private final int minColumns;
+    private final Function<String[], T> parser;
+    private final Function<T, String> check;
+    private final BlockingQueue<CompletableFuture<List<Outcome<T>>>> queue;
+
+    CsvPipeline(Executor parsePool, int parallelism, int minColumns,
+                Function<String[], T> parser, Function<T, String> check) {
+        this.parsePool = parsePool;
+        this.minColumns = minColumns;
+        this.parser = parser;
+        this.check = check;
+        this.queue = new ArrayBlockingQueue<>(Math.max(parallelism, 1) * 2);
+    }
+
+    /**
+     * Reads {@code csv} (header already consumed) to the end. Returns when the last row was handed on;
+     * if the sink or {@code progress} throws, the reader is stopped and the exception propagates.
+     */
+    void run(CSVReader csv, ImportProgress progress, Consumer<Parsed<T>> sink) {
+        Thread reader = Thread.ofVirtual().name("csv-reader").start(() -> read(csv));
+        try {
+            while (true) {
+                List<Outcome<T>> block = take();
+                if (block == END) return;
+                for (Outcome<T> o : block) {
+                    if (o.row() == null) progress.rowFailed(o.line(), o.error());
+                    else sink.accept(new Parsed<>(o.line(), o.row()));
+                }
+            }
+        } finally {
+            // при ошибке писателя читатель может висеть на put() — будим и ждём, пока отпустит csv
+            reader.interrupt();
+            try {
+                reader.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void read(CSVReader csv) {
+        try {
+            List<Raw> block = new ArrayList<>(BLOCK_SIZE);
+            while (true) {
+                // после readNext() getLinesRead() — последняя строка записи, а в кавычках она бывает многострочной
+                long line = csv.getLinesRead() + 1;
+                String[] r = csv.readNext();
+                if (r == null) break;
+                if (r.length < minColumns) continue;
+                block.add(new Raw(line, r));
+                if (block.size() == BLOCK_SIZE) {
+                    submit(block);
+                    block = new ArrayList<>(BLOCK_SIZE);
+                }
+            }
+            if (!block.isEmpty()) submit(block);
+            queue.put(CompletableFuture.completedFuture(end()));
+        } catch (IOException | CsvValidationException e) {
+            offerFailure(new IllegalArgumentException("Invalid CSV format: " + e.getMessage(), e));
+        } catch (InterruptedException e) {
+            // писатель остановился, дальше читать незачем
+        } catch (RuntimeException e) {
+            offerFailure(e);
+        }
+    }
+
+    private void submit(List<Raw> block) throws InterruptedException {
+        queue.put(CompletableFuture.supplyAsync(() -> parse(block), parsePool));
+    }
+
+    private List<Outcome<T>> parse(List<Raw> block) {
+        List<Outcome<T>> out = new ArrayList<>(block.size());
+        for (Raw raw : block) {
+            T row;
+            try {
+                row = parser.apply(raw.fields());
+            } catch (RuntimeException e) {
+                out.add(new Outcome<>(raw.line(), null, "Invalid CSV format at line " + raw.line() + ": " + e.getMessage()));
+                continue;
+            }
+            String error = check.apply(row);
+            out.add(error == null
+                    ? new Outcome<>(raw.line(), row, null)
+                    : new Outcome<>(raw.line(), null, "Row " + raw.line() + ": " + error));
+        }
+        return out;
+    }
+
+    private List<Outcome<T>> take() {
+        try {
+            return queue.take().join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Import interrupted", e);
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException re) throw re;
+            throw e;
+        }
+    }
+
+    // ошибка чтения доходит до писателя в порядке очереди, после уже прочитанных блоков
+    private void offerFailure(RuntimeException e) {
+        try {
+            queue.put(CompletableFuture.failedFuture(e));
+        } catch (InterruptedException ignored) {
+            // писатель уже остановился
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Outcome<T>> end() {
+        return (List<Outcome<T>>) END;
+    }
+}
@@ -0,0 +1,62 @@
+package org.fin.walley.service;
+
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory version of each user's transactions, categories and subcategories, for conditional GETs:
+ * the read endpoints answer {@code If-None-Match} from {@link #etag} with a 304 before touching the database.
+ * Every write path calls {@link #changed} (or {@link #changedAll} when it does not know the users); inside
+ * a transaction the version moves only after commit, so a tag is never handed out for data not yet visible.
+ * <p>
+ * Versions start over with the process; the tag carries a per-process epoch so old tags simply stop matching.
+ * With several app instances behind a balancer each has its own counters and tags, which only costs 200s.
+ */
+@Service
+public class DataVersionService {
+
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+    private final AtomicLong global = new AtomicLong();
+    private final Map<Long, AtomicLong> versions = new ConcurrentHashMap<>();
+
+    /**
+     * Strong ETag (quoted) of the user's current data. Carries the user id: the browser caches per browser,
+     * not per login, so a tag of one user must never match for another whose counters happen to be equal.
+     */
+    public String etag(Long userId) {
+        AtomicLong v = versions.get(userId);
+        return "\"" + epoch + "-" + userId + "-" + global.get() + "-" + (v != null ? v.get() : 0) + "\"";
+    }
+
+    public void changed(Long userId) {
+        afterCommit(() -> versions.computeIfAbsent(userId, u -> new AtomicLong()).incrementAndGet());
+    }
+
+    /** Drops the counter of a deleted user; ids are never reused, so no later tag can collide. */
+    public void forget(Long userId) {
+        afterCommit(() -> versions.remove(userId));
+    }
+
+    /** For writes spanning users it does not track one by one (admin bulk import). */
+    public void changedAll() {
+        afterCommit(global::incrementAndGet);
+    }
+
+    private static void afterCommit(Runnable bump) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            bump.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                bump.run();
+            }
+        });
+    }
+}
@@ -0,0 +1,83 @@
+package org.fin.walley.service;
+
+import org.fin.walley.domain.TransactionType;
+import org.fin.walley.repo.ImportLookupRepository;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Import-scoped duplicate filter. Each user's stored fingerprints ({@code tx.fingerprint}) are loaded once,
+ * with how many rows carry each, and rows are checked against that map in memory. Duplicates are counted
+ * as a multiset: a file with two identical rows against a database that has one of them imports one more,
+ * so re-importing the same file is a no-op and overlapping files only add the rows not yet present.
+ * Not thread-safe; one instance per import.
+ */
+class ImportDeduplicator {
+
+    private final ImportLookupRepository lookups;
+    private final Map<Long, Map<Long, Integer>> stored = new HashMap<>();
+
+    ImportDeduplicator(ImportLookupRepository lookups) {
+        this.lookups = lookups;
+    }
+
+    /**
+     * True if the user already has a row like this one that no earlier row of the import has matched;
+     * that stored row is then used up.
+     */
+    boolean isDuplicate(Long userId, TransactionType type, BigDecimal amount, LocalDate date,
+                        Long categoryId, Long subcategoryId, String note) {
+        Map<Long, Integer> counts = stored.computeIfAbsent(userId, lookups::fingerprintCounts);
+        long fp = fingerprint(userId, type, amount, date, categoryId, subcategoryId, note);
+        Integer left = counts.get(fp);
+        if (left == null) return false;
+        if (left == 1) counts.remove(fp);
+        else counts.put(fp, left - 1);
+        return true;
+    }
+
+    /**
+     * Same value as the SQL function {@code tx_fingerprint} behind the generated column (see V1__baseline.sql):
+     * first 8 bytes of SHA-256 over the normalised fields joined with '|'. Amount as stored (scale 2),
+     * note with whitespace runs collapsed and outer spaces dropped, missing values as empty strings.
+     */
+    static long fingerprint(Long userId, TransactionType type, BigDecimal amount, LocalDate date,
+                            Long categoryId, Long subcategoryId, String note) {
+        String key = String.join("|",
+                userId.toString(),
+                type.name(),
+                amount.setScale(2, RoundingMode.HALF_UP).toPlainString(),
+                date.toString(),
+                categoryId != null ? categoryId.toString() : "",
+                subcategoryId != null ? subcategoryId.toString() : "",
+                normaliseNote(note));
+        return ByteBuffer.wrap(sha256().digest(key.getBytes(StandardCharsets.UTF_8))).getLong();
+    }
+
+    // как btrim(regexp_replace(note, '[ \t\r\n]+', ' ', 'g'), ' ')
+    private static String normaliseNote(String note) {
+        if (note == null) return "";
+        String s = note.replaceAll("[ \t\r\n]+", " ");
+        int from = 0;
+        int to = s.length();
+        while (from < to && s.charAt(from) == ' ') from++;
+        while (to > from && s.charAt(to - 1) == ' ') to--;
+        return s.substring(from, to);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -2,21 +2,38 @@ package org.fin.walley.service;
 
 import com.opencsv.CSVReader;
 import com.opencsv.CSVWriter;
-import org.fin.walley.domain.Transaction;
+import com.opencsv.exceptions.CsvValidationException;
 import org.fin.walley.domain.TransactionType;
+import org.fin.walley.view.AdminTxRow;
+import org.fin.walley.view.TransactionView;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
-import org.springframework.web.multipart.MultipartFile;
+import tools.jackson.core.JacksonException;
+import tools.jackson.core.JsonGenerator;
+import tools.jackson.databind.MappingIterator;
+import tools.jackson.databind.ObjectMapper;
+import tools.jackson.databind.ObjectWriter;
 
 import java.io.*;
 import java.math.BigDecimal;
 import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
 @Service
 public class ImportExportService {
 
+    private final ObjectMapper objectMapper;
+    private final ForkJoinPool parsePool;
+
+    public ImportExportService(ObjectMapper objectMapper, @Qualifier("parsePool") ForkJoinPool parsePool) {
+        this.objectMapper = objectMapper;
+        this.parsePool = parsePool;
+    }
+
 
     public record CsvRow(
             TransactionType type,
@@ -27,129 +44,163 @@ public class ImportExportService {
             String note
     ) {}
 
-    public String exportTransactionsToCsv(List<Transaction> txList) {
-        StringWriter out = new StringWriter();
-        try (CSVWriter writer = new CSVWriter(out)) {
-            writer.writeNext(new String[]{"type", "amount", "date", "category", "subcategory", "note"});
-
-            for (Transaction tx : txList) {
-                String cat = tx.getCategory() != null ? tx.getCategory().getName() : "";
-                String sub = tx.getSubcategory() != null ? tx.getSubcategory().getName() : "";
-
-                writer.writeNext(new String[]{
-                        tx.getType().name(),
-                        tx.getAmount().toPlainString(),
-                        tx.getDate().toString(),
-                        cat,
-                        sub,
-                        nullToEmpty(tx.getNote())
-                });
-            }
+    // элемент JSON-импорта пользователя: категории по id, как в API
+    public record JsonRow(
+            TransactionType type,
+            BigDecimal amount,
+            LocalDate date,
+            Long categoryId,
+            Long subcategoryId,
+            String note
+    ) {}
+
+    /**
+     * Writes rows to {@code out} as they come off the stream; only the writer's buffer is held in memory.
+     * Does not close {@code out}.
+     */
+    public void writeTransactionsCsv(Stream<TransactionView> rows, OutputStream out) {
+        CSVWriter writer = new CSVWriter(new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)));
+        writer.writeNext(new String[]{"type", "amount", "date", "category", "subcategory", "note"});
+
+        rows.forEach(tx -> writer.writeNext(new String[]{
+                tx.type().name(),
+                tx.amount().toPlainString(),
+                tx.date().toString(),
+                nullToEmpty(tx.categoryName()),
+                nullToEmpty(tx.subcategoryName()),
+                nullToEmpty(tx.note())
+        }));
+
+        try {
+            writer.flush();
         } catch (IOException e) {
-            throw new RuntimeException(e);
+            throw new UncheckedIOException(e);
         }
-        return out.toString();
     }
 
-    public List<CsvRow> importRowsFromCsv(MultipartFile file) {
-        try (Reader reader = new InputStreamReader(file.getInputStream(), StandardCharsets.UTF_8);
-             CSVReader csv = new CSVReader(reader)) {
+    /**
+     * A parsed import row with its position in the upload: the physical line for CSV,
+     * the 1-based array index for JSON. Used in error messages.
+     */
+    public record Parsed<T>(long line, T row) {}
+
+    /**
+     * Reads the user CSV format and hands the parsed rows to {@code sink} in file order. Rows are parsed and
+     * passed through {@code check} (returns an error message or null) in parallel, a few blocks ahead of the
+     * sink, see {@link CsvPipeline}. Unparseable and rejected rows go to {@link ImportProgress#rowFailed}.
+     */
+    public void readCsvRows(InputStream in, Function<CsvRow, String> check, ImportProgress progress,
+                            Consumer<Parsed<CsvRow>> sink) {
+        readCsv(in, 4, r -> {
+            TransactionType type = TransactionType.valueOf(r[0].trim());
+            BigDecimal amount = new BigDecimal(r[1].trim());
+            LocalDate date = LocalDate.parse(r[2].trim());
+            String category = safe(r, 3);        // required
+            String subcategory = safe(r, 4);     // optional
+            String note = safe(r, 5);            // optional
+
+            if (category == null || category.isBlank()) {
+                throw new IllegalArgumentException("CSV row has empty category (required)");
+            }
 
-            List<String[]> rows = csv.readAll();
-            if (rows.isEmpty()) return List.of();
+            return new CsvRow(type, amount, date, category, subcategory, note);
+        }, check, progress, sink);
+    }
 
-            List<CsvRow> result = new ArrayList<>();
+    /**
+     * Reads the admin (all users) CSV format row by row, see {@link #readCsvRows}.
+     */
+    public void readAdminCsvRows(InputStream in, Function<AdminTxRow, String> check, ImportProgress progress,
+                                 Consumer<Parsed<AdminTxRow>> sink) {
+        readCsv(in, 5, r -> {
+            String username = safeRequired(r, 0, "username");
+            TransactionType type = TransactionType.valueOf(safeRequired(r, 1, "type"));
+            BigDecimal amount = new BigDecimal(safeRequired(r, 2, "amount"));
+            LocalDate date = LocalDate.parse(safeRequired(r, 3, "date"));
+            String category = safeRequired(r, 4, "category");
+            String subcategory = safe(r, 5);
+            String note = safe(r, 6);
+
+            return new AdminTxRow(username, type, amount, date, category, subcategory, note);
+        }, check, progress, sink);
+    }
 
-            // skip header
-            for (int i = 1; i < rows.size(); i++) {
-                String[] r = rows.get(i);
-                if (r.length < 4) continue;
-
-                TransactionType type = TransactionType.valueOf(r[0].trim());
-                BigDecimal amount = new BigDecimal(r[1].trim());
-                LocalDate date = LocalDate.parse(r[2].trim());
-                String category = safe(r, 3);        // required
-                String subcategory = safe(r, 4);     // optional
-                String note = safe(r, 5);            // optional
-
-                if (category == null || category.isBlank()) {
-                    throw new IllegalArgumentException("CSV row has empty category (required)");
-                }
-
-                result.add(new CsvRow(type, amount, date, category, subcategory, note));
+    /**
+     * Reads a top-level JSON array element by element (Jackson {@code MappingIterator}),
+     * never materialising the whole array. Malformed JSON cannot be skipped and always aborts.
+     */
+    public <T> void readJsonArray(InputStream in, Class<T> type, Consumer<Parsed<T>> sink) {
+        long index = 0;
+        try (MappingIterator<T> it = objectMapper.readerFor(type).readValues(in)) {
+            while (it.hasNextValue()) {
+                T row = it.nextValue();
+                sink.accept(new Parsed<>(++index, row));
             }
+        } catch (JacksonException e) {
+            throw new IllegalArgumentException("Invalid JSON format at element " + (index + 1) + ": " + e.getOriginalMessage(), e);
+        }
+    }
+
+    private <T> void readCsv(InputStream in, int minColumns, Function<String[], T> parser, Function<T, String> check,
+                             ImportProgress progress, Consumer<Parsed<T>> sink) {
+        try (CSVReader csv = new CSVReader(new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8)))) {
+            // skip header
+            if (csv.readNext() == null) return;
 
-            return result;
-        } catch (Exception e) {
+            new CsvPipeline<>(parsePool, parsePool.getParallelism(), minColumns, parser, check)
+                    .run(csv, progress, sink);
+        } catch (IOException | CsvValidationException e) {
             throw new IllegalArgumentException("Invalid CSV format: " + e.getMessage(), e);
         }
     }
 
 
-    public record AdminTxRow(
-            String username,
-            TransactionType type,
-            BigDecimal amount,
-            LocalDate date,
-            String category,
-            String subcategory,
-            String note
-    ) {}
-
-    public String exportAllUsersTransactionsToCsv(List<AdminTxRow> rows) {
-        StringWriter out = new StringWriter();
-        try (CSVWriter writer = new CSVWriter(out)) {
-            writer.writeNext(new String[]{"username", "type", "amount", "date", "category", "subcategory", "note"});
-
-            for (AdminTxRow r : rows) {
-                writer.writeNext(new String[]{
-                        nullToEmpty(r.username()),
-                        r.type() != null ? r.type().name() : "",
-                        r.amount() != null ? r.amount().toPlainString() : "",
-                        r.date() != null ? r.date().toString() : "",
-                        nullToEmpty(r.category()),
-                        nullToEmpty(r.subcategory()),
-                        nullToEmpty(r.note())
-                });
-            }
+    /**
+     * Streaming counterpart of the admin CSV format; does not close {@code out}.
+     */
+    public void writeAllUsersTransactionsCsv(Stream<AdminTxRow> rows, OutputStream out) {
+        CSVWriter writer = new CSVWriter(new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)));
+        writer.writeNext(new String[]{"username", "type", "amount", "date", "category", "subcategory", "note"});
+
+        rows.forEach(r -> writer.writeNext(new String[]{
+                nullToEmpty(r.username()),
+                r.type() != null ? r.type().name() : "",
+                r.amount() != null ? r.amount().toPlainString() : "",
+                r.date() != null ? r.date().toString() : "",
+                nullToEmpty(r.category()),
+                nullToEmpty(r.subcategory()),
+                nullToEmpty(r.note())
+        }));
+
+        try {
+            writer.flush();
         } catch (IOException e) {
-            throw new RuntimeException(e);
+            throw new UncheckedIOException(e);
         }
-        return out.toString();
     }
 
-    public List<AdminTxRow> importAllUsersTransactionsFromCsv(MultipartFile file) {
-        try (Reader reader = new InputStreamReader(file.getInputStream(), StandardCharsets.UTF_8);
-             CSVReader csv = new CSVReader(reader)) {
-
-            List<String[]> rows = csv.readAll();
-            if (rows.isEmpty()) return List.of();
-
-            List<AdminTxRow> result = new ArrayList<>();
-
-            // skip header
-            for (int i = 1; i < rows.size(); i++) {
-                String[] r = rows.get(i);
-                if (r.length < 5) continue;
-
-                String username = safeRequired(r, 0, "username");
-                TransactionType type = TransactionType.valueOf(safeRequired(r, 1, "type"));
-                BigDecimal amount = new BigDecimal(safeRequired(r, 2, "amount"));
-                LocalDate date = LocalDate.parse(safeRequired(r, 3, "date"));
-                String category = safeRequired(r, 4, "category");
-                String subcategory = safe(r, 5);
-                String note = safe(r, 6);
-
-                result.add(new AdminTxRow(username, type, amount, date, category, subcategory, note));
-            }
-
-            return result;
-        } catch (Exception e) {
-            throw new IllegalArgumentException("Invalid CSV format: " + e.getMessage(), e);
-        }
+    /**
+     * Writes the rows as one JSON array, element by element, through Jackson's streaming generator;
+     * does not close {@code out}.
+     */
+    public void writeAllUsersTransactionsJson(Stream<AdminTxRow> rows, OutputStream out) {
+        writeJsonArray(objectMapper.writerWithDefaultPrettyPrinter(), rows, out);
     }
 
+    /**
+     * Same as {@link #writeAllUsersTransactionsJson} for any rows, without pretty printing.
+     */
+    public void writeJsonArray(Stream<?> rows, OutputStream out) {
+        writeJsonArray(objectMapper.writer(), rows, out);
+    }
 
+    private static void writeJsonArray(ObjectWriter writer, Stream<?> rows, OutputStream out) {
+        JsonGenerator gen = writer.createGenerator(out);
+        gen.writeStartArray();
+        rows.forEach(gen::writePOJO);
+        gen.writeEndArray();
+        gen.flush();
+    }
 
     private static String safe(String[] row, int idx) {
         if (idx >= row.length) return null;
@@ -0,0 +1,365 @@
+package org.fin.walley.service;
+
+import org.fin.walley.view.ImportJobView;
+import org.fin.walley.view.ImportJobView.Kind;
+import org.fin.walley.view.ImportJobView.State;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Background import jobs. An upload is first spooled to a file under {@code walley.import.spool-dir} so the
+ * HTTP request returns at once with a job id; the job then runs on the bounded import executor through
+ * {@link TransactionImportService} in committed chunks, skipping and listing bad rows. Jobs of one user run
+ * one after another (they would only contend on the same rollup rows), jobs of different users in parallel;
+ * a user may have at most {@code walley.import.max-pending-per-user} jobs queued or running at a time.
+ * Job state lives in memory and is forgotten {@code walley.import.retention} after the job ends.
+ */
+@Service
+public class ImportJobService {
+
+    private static final Logger log = LoggerFactory.getLogger(ImportJobService.class);
+
+    static final int MAX_ERRORS = 500;
+
+    private final TransactionImportService importService;
+    private final TaskExecutor executor;
+    private final Path spoolDir;
+    private final Duration retention;
+    private final int maxPendingPerUser;
+
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+    // последняя задача каждого пользователя; следующая цепляется за неё
+    private final Map<String, CompletableFuture<Void>> userTails = new ConcurrentHashMap<>();
+    // сколько задач пользователя поставлено и ещё не закончилось
+    private final Map<String, Integer> pending = new ConcurrentHashMap<>();
+
+    public ImportJobService(TransactionImportService importService,
+                            @Qualifier("importExecutor") TaskExecutor executor,
+                            @Value("${walley.import.spool-dir:${java.io.tmpdir}/walley-imports}") Path spoolDir,
+                            @Value("${walley.import.retention:24h}") Duration retention,
+                            @Value("${walley.import.max-pending-per-user:3}") int maxPendingPerUser) throws IOException {
+        this.importService = importService;
+        this.executor = executor;
+        this.spoolDir = Files.createDirectories(spoolDir);
+        this.retention = retention;
+        this.maxPendingPerUser = maxPendingPerUser;
+    }
+
+    /**
+     * Spools {@code upload} to disk and queues the job behind the owner's earlier jobs.
+     * The caller may close the upload as soon as this returns. {@code dedup}: skip rows the user already has.
+     *
+     * @throws TooManyImportsException if the owner is at the limit of pending jobs; nothing is spooled then
+     */
+    public ImportJobView submit(String owner, Kind kind, boolean dedup, InputStream upload) {
+        if (dedup && kind == Kind.ADMIN_CSV_BULK) {
+            throw new IllegalArgumentException("dedup is not supported by the bulk import");
+        }
+        reserve(owner);
+        Path file;
+        try {
+            file = spool(upload);
+        } catch (RuntimeException e) {
+            release(owner);
+            throw e;
+        }
+
+        Job job = new Job(UUID.randomUUID().toString(), owner, kind, dedup, file, size(file));
+        jobs.put(job.id, job);
+
+        // отказ пула (в т.ч. сразу, когда предыдущая задача уже закончилась) thenRunAsync не бросает,
+        // а завершает стадию исключением — его и разбираем в exceptionally
+        CompletableFuture<Void> tail = userTails.compute(owner, (u, prev) ->
+                (prev != null ? prev : CompletableFuture.<Void>completedFuture(null))
+                        .thenRunAsync(() -> run(job), executor)
+                        .exceptionally(e -> {
+                            notRun(job, e);
+                            return null;
+                        }));
+        tail.whenComplete((v, e) -> {
+            userTails.remove(owner, tail);
+            release(owner);
+        });
+
+        return job.view();
+    }
+
+    public ImportJobView status(String owner, String id) {
+        return find(owner, id).view();
+    }
+
+    public List<ImportJobView> listForUser(String owner) {
+        return jobs.values().stream()
+                .filter(j -> j.owner.equals(owner))
+                .sorted(Comparator.comparing((Job j) -> j.submittedAt).reversed())
+                .map(Job::view)
+                .toList();
+    }
+
+    /**
+     * A queued job is dropped; a running one stops before its next chunk, keeping the chunks already
+     * committed (a bulk COPY job keeps nothing). Finished jobs are left as they are.
+     */
+    public ImportJobView cancel(String owner, String id) {
+        Job job = find(owner, id);
+        job.cancel();
+        return job.view();
+    }
+
+    @Scheduled(fixedDelayString = "PT1H")
+    public void forgetFinished() {
+        Instant cutoff = Instant.now().minus(retention);
+        jobs.values().removeIf(j -> j.finishedAt != null && j.finishedAt.isBefore(cutoff));
+    }
+
+    private void reserve(String owner) {
+        if (pending.merge(owner, 1, Integer::sum) > maxPendingPerUser) {
+            release(owner);
+            throw new TooManyImportsException(maxPendingPerUser);
+        }
+    }
+
+    private void release(String owner) {
+        pending.computeIfPresent(owner, (u, n) -> n > 1 ? n - 1 : null);
+    }
+
+    private Path spool(InputStream upload) {
+        Path file;
+        try {
+            file = Files.createTempFile(spoolDir, "import-", ".upload");
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not spool upload", e);
+        }
+        try {
+            Files.copy(upload, file, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            deleteQuietly(file);
+            throw new UncheckedIOException("Could not spool upload", e);
+        }
+        return file;
+    }
+
+    private Job find(String owner, String id) {
+        Job job = jobs.get(id);
+        if (job == null || !job.owner.equals(owner)) {
+            throw new IllegalArgumentException("Import job not found");
+        }
+        return job;
+    }
+
+    private void run(Job job) {
+        try {
+            if (!job.start()) return;
+            try (InputStream in = new BufferedInputStream(new CountingInputStream(Files.newInputStream(job.file), job.bytesRead), 1 << 16)) {
+                switch (job.kind) {
+                    case USER_CSV -> importService.importUserCsv(job.owner, in, job.dedup, job);
+                    case USER_JSON -> importService.importUserJson(job.owner, in, job.dedup, job);
+                    case ADMIN_CSV -> importService.importAdminCsv(in, job.dedup, job);
+                    case ADMIN_CSV_BULK -> importService.importAdminCsvBulk(in, job);
+                    case ADMIN_JSON -> importService.importAdminJson(in, job.dedup, job);
+                }
+            }
+            job.finish(State.DONE, null);
+        } catch (CancellationException e) {
+            job.finish(State.CANCELLED, "Cancelled after " + job.rowsImported.get() + " rows");
+        } catch (IllegalArgumentException e) {
+            job.finish(State.FAILED, e.getMessage());
+        } catch (IOException | RuntimeException e) {
+            log.warn("Import job {} of {} failed", job.id, job.owner, e);
+            job.finish(State.FAILED, "Import failed: " + e.getMessage());
+        } finally {
+            deleteQuietly(job.file);
+        }
+    }
+
+    // run() не вызывался или упал с Error: файл больше никому не нужен
+    private static void notRun(Job job, Throwable e) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        if (cause instanceof RejectedExecutionException) {
+            job.finish(State.FAILED, "Import queue is full, try again later");
+        } else {
+            log.error("Import job {} of {} failed", job.id, job.owner, cause);
+            job.finish(State.FAILED, "Import failed: " + cause.getMessage());
+        }
+        deleteQuietly(job.file);
+    }
+
+    private static long size(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Could not delete spooled import {}", file, e);
+        }
+    }
+
+    /**
+     * Mutable job state. Counters are written by the one worker running the job and read by status requests.
+     */
+    private static final class Job implements ImportProgress {
+
+        final String id;
+        final String owner;
+        final Kind kind;
+        final boolean dedup;
+        final Path file;
+        final long bytesTotal;
+        final Instant submittedAt = Instant.now();
+
+        final AtomicLong bytesRead = new AtomicLong();
+        final AtomicLong rowsImported = new AtomicLong();
+        final AtomicLong rowsSkipped = new AtomicLong();
+        final AtomicLong rowsFailed = new AtomicLong();
+        private final List<String> errors = new ArrayList<>();
+
+        volatile State state = State.QUEUED;
+        volatile boolean cancelRequested;
+        volatile String message;
+        volatile Instant startedAt;
+        volatile Instant finishedAt;
+
+        Job(String id, String owner, Kind kind, boolean dedup, Path file, long bytesTotal) {
+            this.id = id;
+            this.owner = owner;
+            this.kind = kind;
+            this.dedup = dedup;
+            this.file = file;
+            this.bytesTotal = bytesTotal;
+        }
+
+        /** False if the job was cancelled while queued. */
+        synchronized boolean start() {
+            if (state != State.QUEUED) return false;
+            state = State.RUNNING;
+            startedAt = Instant.now();
+            return true;
+        }
+
+        synchronized void cancel() {
+            cancelRequested = true;
+            if (state == State.QUEUED) {
+                finish(State.CANCELLED, "Cancelled before start");
+            }
+        }
+
+        synchronized void finish(State end, String message) {
+            if (finishedAt != null) return;
+            this.state = end;
+            this.message = message;
+            this.finishedAt = Instant.now();
+        }
+
+        @Override
+        public void rowFailed(long line, String message) {
+            rowsFailed.incrementAndGet();
+            synchronized (errors) {
+                if (errors.size() < MAX_ERRORS) errors.add(message);
+            }
+        }
+
+        @Override
+        public void rowsImported(int count) {
+            rowsImported.addAndGet(count);
+        }
+
+        @Override
+        public void rowsSkipped(int count) {
+            rowsSkipped.addAndGet(count);
+        }
+
+        @Override
+        public boolean cancelled() {
+            return cancelRequested;
+        }
+
+        ImportJobView view() {
+            long read = bytesRead.get();
+            long imported = rowsImported.get();
+            long skipped = rowsSkipped.get();
+            long failed = rowsFailed.get();
+            List<String> errorsCopy;
+            synchronized (errors) {
+                errorsCopy = List.copyOf(errors);
+            }
+
+            Double rowsPerSecond = null;
+            Long etaSeconds = null;
+            if (startedAt != null && read > 0) {
+                Instant end = finishedAt != null ? finishedAt : Instant.now();
+                double seconds = Math.max(Duration.between(startedAt, end).toMillis(), 1) / 1000.0;
+                rowsPerSecond = (imported + skipped + failed) / seconds;
+                // оценка по доле прочитанного файла: строки разной длины, байты честнее
+                if (state == State.RUNNING) {
+                    etaSeconds = Math.round(seconds * Math.max(bytesTotal - read, 0) / read);
+                }
+            }
+            return new ImportJobView(id, kind, dedup, state, bytesTotal, read, imported, skipped, failed, errorsCopy,
+                    rowsPerSecond, etaSeconds, message, submittedAt, startedAt, finishedAt);
+        }
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+
+        private final AtomicLong count;
+
+        CountingInputStream(InputStream in, AtomicLong count) {
+            super(in);
+            this.count = count;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) count.incrementAndGet();
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) count.addAndGet(n);
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count.addAndGet(skipped);
+            return skipped;
+        }
+    }
+}
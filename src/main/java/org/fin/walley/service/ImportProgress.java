@@ -0,0 +1,31 @@
+package org.fin.walley.service;
+
+/**
+ * Callbacks from a running import. The defaults give the synchronous behaviour: the first bad row aborts
+ * the import with its message. Background jobs override them to collect row errors, count progress and
+ * request cancellation.
+ */
+public interface ImportProgress {
+
+    ImportProgress FAIL_FAST = new ImportProgress() {};
+
+    /**
+     * A row was rejected; {@code message} already names the row. Return normally to skip it and go on.
+     */
+    default void rowFailed(long line, String message) {
+        throw new IllegalArgumentException(message);
+    }
+
+    /** Called after each committed chunk. */
+    default void rowsImported(int count) {
+    }
+
+    /** Rows left out as already present (dedup mode); called from inside the chunk's transaction. */
+    default void rowsSkipped(int count) {
+    }
+
+    /** Polled between rows; when true the import stops after the last committed chunk. */
+    default boolean cancelled() {
+        return false;
+    }
+}
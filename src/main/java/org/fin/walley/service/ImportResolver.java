@@ -0,0 +1,150 @@
+package org.fin.walley.service;
+
+import org.fin.walley.domain.AppUser;
+import org.fin.walley.domain.TransactionType;
+import org.fin.walley.repo.AppUserRepository;
+import org.fin.walley.repo.ImportLookupRepository;
+import org.fin.walley.repo.ImportLookupRepository.CategoryRow;
+import org.fin.walley.repo.ImportLookupRepository.SubcategoryRow;
+import org.fin.walley.repo.SyncRepository;
+import org.fin.walley.service.ImportExportService.Parsed;
+import org.fin.walley.view.AdminTxRow;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Import-scoped id cache: each user's categories and subcategories are loaded once, on the first row
+ * that mentions the user, and kept as plain ids in hash maps for the rest of the import. Names missing
+ * from the maps are created per chunk with one set-based upsert, so resolving a row costs no queries.
+ * Not thread-safe; one instance per import.
+ */
+class ImportResolver {
+
+    private final AppUserRepository userRepo;
+    private final ImportLookupRepository lookups;
+    private final SyncRepository sync;
+
+    private final Map<String, Long> userIds = new HashMap<>();
+    private final Set<String> unknownUsers = new HashSet<>();
+    private final Set<Long> loadedUsers = new HashSet<>();
+    private final Map<CategoryKey, Long> categoryIds = new HashMap<>();
+    private final Map<Long, TransactionType> categoryTypes = new HashMap<>();
+    private final Map<Long, Long> categoryOwners = new HashMap<>();
+    private final Map<SubcategoryKey, Long> subcategoryIds = new HashMap<>();
+    private final Map<Long, Long> subcategoryParents = new HashMap<>();
+
+    private record CategoryKey(Long userId, TransactionType type, String name) {}
+
+    private record SubcategoryKey(Long categoryId, String name) {}
+
+    ImportResolver(AppUserRepository userRepo, ImportLookupRepository lookups, SyncRepository sync) {
+        this.userRepo = userRepo;
+        this.lookups = lookups;
+        this.sync = sync;
+    }
+
+    /**
+     * Makes sure every user, category and subcategory named in the chunk has an id in the maps,
+     * creating missing categories/subcategories. Rows of unknown users are skipped; {@link #userId(String)}
+     * returns null for them afterwards. Call inside the chunk's transaction: it starts by locking the sync
+     * rows of the chunk's users, see {@link SyncRepository#lockUsers}.
+     */
+    void prepare(Iterable<Parsed<AdminTxRow>> chunk) {
+        Set<Long> chunkUsers = new HashSet<>();
+        Map<Long, Set<CategoryRow>> missingCategories = new HashMap<>();
+        for (Parsed<AdminTxRow> p : chunk) {
+            AdminTxRow r = p.row();
+            Long userId = lookupUser(r.username());
+            if (userId == null) continue;
+            chunkUsers.add(userId);
+            CategoryKey key = new CategoryKey(userId, r.type(), r.category());
+            if (!categoryIds.containsKey(key)) {
+                missingCategories.computeIfAbsent(userId, u -> new LinkedHashSet<>())
+                        .add(new CategoryRow(null, r.type(), r.category()));
+            }
+        }
+        // до первой записи пачки: её триггеры блокируют user_sync в порядке строк
+        sync.lockUsers(chunkUsers);
+        missingCategories.forEach((userId, keys) -> {
+            for (CategoryRow c : lookups.upsertCategories(userId, keys)) {
+                putCategory(userId, c);
+            }
+        });
+
+        Set<SubcategoryRow> missingSubcategories = new LinkedHashSet<>();
+        for (Parsed<AdminTxRow> p : chunk) {
+            AdminTxRow r = p.row();
+            Long userId = userIds.get(r.username());
+            if (userId == null || r.subcategory() == null || r.subcategory().isBlank()) continue;
+            Long categoryId = categoryId(userId, r.type(), r.category());
+            if (!subcategoryIds.containsKey(new SubcategoryKey(categoryId, r.subcategory()))) {
+                missingSubcategories.add(new SubcategoryRow(null, categoryId, r.subcategory()));
+            }
+        }
+        if (!missingSubcategories.isEmpty()) {
+            lookups.upsertSubcategories(missingSubcategories).forEach(this::putSubcategory);
+        }
+    }
+
+    /**
+     * For id-based rows: loads the user's categories once; no upserts.
+     */
+    void prepareUser(Long userId) {
+        if (loadedUsers.add(userId)) {
+            lookups.categoriesOfUser(userId).forEach(c -> putCategory(userId, c));
+            lookups.subcategoriesOfUser(userId).forEach(this::putSubcategory);
+        }
+    }
+
+    /** Null if no such user. */
+    Long userId(String username) {
+        return userIds.get(username);
+    }
+
+    Long categoryId(Long userId, TransactionType type, String name) {
+        return categoryIds.get(new CategoryKey(userId, type, name));
+    }
+
+    Long subcategoryId(Long categoryId, String name) {
+        return subcategoryIds.get(new SubcategoryKey(categoryId, name));
+    }
+
+    /** Null if the category does not exist or belongs to someone else. */
+    TransactionType categoryTypeOwnedBy(Long userId, Long categoryId) {
+        return userId.equals(categoryOwners.get(categoryId)) ? categoryTypes.get(categoryId) : null;
+    }
+
+    /** Null if the subcategory is unknown among the prepared users' subcategories. */
+    Long parentOf(Long subcategoryId) {
+        return subcategoryParents.get(subcategoryId);
+    }
+
+    private Long lookupUser(String username) {
+        Long id = userIds.get(username);
+        if (id == null && !unknownUsers.contains(username)) {
+            id = userRepo.findByUsername(username).map(AppUser::getId).orElse(null);
+            if (id == null) {
+                unknownUsers.add(username);
+            } else {
+                userIds.put(username, id);
+                prepareUser(id);
+            }
+        }
+        return id;
+    }
+
+    private void putCategory(Long userId, CategoryRow c) {
+        categoryIds.put(new CategoryKey(userId, c.type(), c.name()), c.id());
+        categoryTypes.put(c.id(), c.type());
+        categoryOwners.put(c.id(), userId);
+    }
+
+    private void putSubcategory(SubcategoryRow s) {
+        subcategoryIds.put(new SubcategoryKey(s.categoryId(), s.name()), s.id());
+        subcategoryParents.put(s.id(), s.categoryId());
+    }
+}
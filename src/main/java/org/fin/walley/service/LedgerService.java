@@ -0,0 +1,152 @@
+package org.fin.walley.service;
+
+import org.fin.walley.domain.Transaction;
+import org.fin.walley.domain.TransactionType;
+import org.fin.walley.repo.BudgetCounterRepository;
+import org.fin.walley.repo.BudgetRepository;
+import org.fin.walley.repo.DailyBalanceRepository;
+import org.fin.walley.repo.MonthlyCategoryTotalRepository;
+import org.fin.walley.view.LedgerTotals;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Collection;
+
+/**
+ * Keeps the rollups derived from {@code tx} in step with it: the per-user daily balance
+ * ({@code daily_balance}), the monthly per-category totals ({@code monthly_category_total})
+ * and the budget period counters ({@code budget_counter}).
+ * Every write path to tx must call into here inside the same DB transaction.
+ */
+@Service
+public class LedgerService {
+
+    private final DailyBalanceRepository balances;
+    private final MonthlyCategoryTotalRepository monthly;
+    private final BudgetCounterRepository budgetCounters;
+    private final BudgetRepository budgets;
+
+    public LedgerService(DailyBalanceRepository balances,
+                         MonthlyCategoryTotalRepository monthly,
+                         BudgetCounterRepository budgetCounters,
+                         BudgetRepository budgets) {
+        this.balances = balances;
+        this.monthly = monthly;
+        this.budgetCounters = budgetCounters;
+        this.budgets = budgets;
+    }
+
+    /**
+     * Snapshot of the fields of a transaction the rollups depend on. Take it before mutating an entity
+     * so the old contribution can be reversed.
+     */
+    public record Entry(Long userId, LocalDate date, TransactionType type, BigDecimal amount,
+                        Long categoryId, Long subcategoryId) {
+
+        public static Entry of(Transaction tx) {
+            return new Entry(
+                    tx.getUser().getId(),
+                    tx.getDate(),
+                    tx.getType(),
+                    tx.getAmount(),
+                    tx.getCategory() != null ? tx.getCategory().getId() : null,
+                    tx.getSubcategory() != null ? tx.getSubcategory().getId() : null
+            );
+        }
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void record(Entry e) {
+        apply(e, BigDecimal.ONE);
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void reverse(Entry e) {
+        apply(e, BigDecimal.ONE.negate());
+    }
+
+    /**
+     * Set-based {@link #record} for rows just inserted in bulk (recurring materialisation, imports).
+     * Keep {@code txIds} to a few thousand: they are bound as individual parameters.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void recordInserted(Collection<Long> txIds) {
+        if (txIds.isEmpty()) {
+            return;
+        }
+        balances.addTransactions(txIds);
+        monthly.addTransactions(txIds);
+        budgetCounters.addTransactions(txIds);
+    }
+
+    /**
+     * Set-based {@link #record} for a COPY bulk import: the new rows are those listed in
+     * {@code BulkImportRepository.IDS_TABLE}, however many there are.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void recordBulkImported() {
+        balances.addBulkImported();
+        monthly.addBulkImported();
+        budgetCounters.addBulkImported();
+    }
+
+    /**
+     * Call before {@code TransactionRepository.clearCategory}/{@code deleteAllForCategory}.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void removeCategory(Long categoryId) {
+        balances.subtractCategory(categoryId);
+        monthly.deleteAllForCategory(categoryId);
+        budgetCounters.deleteAllForCategory(categoryId);
+        budgets.deleteAllForCategory(categoryId);
+    }
+
+    /**
+     * Call before {@code TransactionRepository.clearSubcategory}: the amounts stay in the category,
+     * they just move to the "no subcategory" bucket. Budgets on the subcategory itself go away.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void detachSubcategory(Long subcategoryId) {
+        monthly.foldSubcategory(subcategoryId);
+        monthly.deleteAllForSubcategory(subcategoryId);
+        budgetCounters.deleteAllForSubcategory(subcategoryId);
+        budgets.deleteAllForSubcategory(subcategoryId);
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void removeUser(Long userId) {
+        balances.deleteAllForUser(userId);
+        monthly.deleteAllForUser(userId);
+        budgetCounters.deleteAllForUser(userId);
+        budgets.deleteAllForUser(userId);
+    }
+
+    @Transactional(readOnly = true)
+    public LedgerTotals totals(Long userId) {
+        return balances.totals(userId).orElse(LedgerTotals.ZERO);
+    }
+
+    @Transactional(readOnly = true)
+    public LedgerTotals totalsUpTo(Long userId, LocalDate asOf) {
+        return balances.totalsUpTo(userId, asOf).orElse(LedgerTotals.ZERO);
+    }
+
+    private void apply(Entry e, BigDecimal sign) {
+        BigDecimal signed = e.amount().multiply(sign);
+        BigDecimal income = e.type() == TransactionType.INCOME ? signed : BigDecimal.ZERO;
+        BigDecimal expense = e.type() == TransactionType.EXPENSE ? signed : BigDecimal.ZERO;
+        balances.addDelta(e.userId(), e.date(), income, expense);
+
+        if (e.categoryId() != null) {
+            monthly.addDelta(e.userId(), e.date().withDayOfMonth(1), e.type().name(),
+                    e.categoryId(), e.subcategoryId(), signed, sign.longValueExact());
+
+            if (e.type() == TransactionType.EXPENSE) {
+                budgetCounters.addDelta(e.categoryId(), e.subcategoryId(), e.date(), signed);
+            }
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package org.fin.walley.service;
+
+import org.fin.walley.repo.RecurringTransactionRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Materialises due recurring transactions of all users. Due template ids are read in keyset chunks and
+ * each chunk is committed separately on the bounded batch executor, so a failure only rolls back its chunk
+ * (the next run retries it) and the run never holds more than a few connections.
+ */
+@Component
+public class RecurringScheduler {
+
+    private static final Logger log = LoggerFactory.getLogger(RecurringScheduler.class);
+
+    static final int CHUNK_SIZE = 500;
+
+    private final RecurringTransactionRepository recurring;
+    private final RecurringTransactionService service;
+    private final TaskExecutor executor;
+
+    public RecurringScheduler(RecurringTransactionRepository recurring,
+                              RecurringTransactionService service,
+                              @Qualifier("batchExecutor") TaskExecutor executor) {
+        this.recurring = recurring;
+        this.service = service;
+        this.executor = executor;
+    }
+
+    @Scheduled(cron = "${walley.recurring.cron:0 5 0 * * *}", zone = "Europe/Warsaw")
+    public void materialiseDue() {
+        LocalDate today = LocalDate.now(RecurringTransactionService.ZONE);
+        long started = System.nanoTime();
+
+        List<CompletableFuture<Integer>> chunks = new ArrayList<>();
+        Long afterId = 0L;
+        List<Long> ids;
+        while (!(ids = recurring.findDueIds(today, afterId, Limit.of(CHUNK_SIZE))).isEmpty()) {
+            afterId = ids.getLast();
+            List<Long> chunk = ids;
+            chunks.add(CompletableFuture.supplyAsync(() -> service.materialise(chunk, today), executor)
+                    .exceptionally(e -> {
+                        log.warn("Recurring chunk starting at template {} failed, will retry next run", chunk.getFirst(), e);
+                        return 0;
+                    }));
+        }
+
+        int created = chunks.stream().mapToInt(CompletableFuture::join).sum();
+        if (created > 0) {
+            log.info("Materialised {} recurring transactions in {} chunks, {} ms",
+                    created, chunks.size(), (System.nanoTime() - started) / 1_000_000);
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package org.fin.walley.service;
+
+import org.fin.walley.domain.*;
+import org.fin.walley.repo.AppUserRepository;
+import org.fin.walley.repo.CategoryRepository;
+import org.fin.walley.repo.RecurringTransactionRepository;
+import org.fin.walley.repo.SubcategoryRepository;
+import org.fin.walley.repo.SyncRepository;
+import org.fin.walley.view.RecurringView;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Recurring transaction templates and their materialisation into tx.
+ * Occurrences are created set-based ({@code insert ... select} over a chunk of templates), never row by row.
+ */
+@Service
+public class RecurringTransactionService {
+
+    public static final ZoneId ZONE = ZoneId.of("Europe/Warsaw");
+
+    // предохранитель: шаблон, стартовавший давно, догоняется за несколько прогонов
+    private static final int MAX_CATCH_UP_ROUNDS = 120;
+
+    private final RecurringTransactionRepository recurring;
+    private final CategoryRepository catRepo;
+    private final SubcategoryRepository subRepo;
+    private final AppUserRepository users;
+    private final SyncRepository sync;
+    private final LedgerService ledger;
+    private final DataVersionService versions;
+
+    public RecurringTransactionService(RecurringTransactionRepository recurring,
+                                       CategoryRepository catRepo,
+                                       SubcategoryRepository subRepo,
+                                       AppUserRepository users,
+                                       SyncRepository sync,
+                                       LedgerService ledger,
+                                       DataVersionService versions) {
+        this.recurring = recurring;
+        this.catRepo = catRepo;
+        this.subRepo = subRepo;
+        this.users = users;
+        this.sync = sync;
+        this.ledger = ledger;
+        this.versions = versions;
+    }
+
+    @Transactional(readOnly = true)
+    public List<RecurringView> listForUser(Long userId) {
+        return recurring.findViewsByUserId(userId);
+    }
+
+    /**
+     * Occurrences already due (start date today or in the past) are created right away.
+     */
+    @Transactional
+    public RecurringTransaction create(Long userId, TransactionType type, BigDecimal amount,
+                                       Long categoryId, Long subcategoryIdOrNull, String note,
+                                       RecurrenceFrequency frequency, LocalDate startDate, LocalDate endDateOrNull) {
+        Category cat = catRepo.findByIdAndUserId(categoryId, userId)
+                .orElseThrow(() -> new IllegalArgumentException("Category not found"));
+        if (cat.getType() != type) {
+            throw new IllegalArgumentException("Category type must match transaction type");
+        }
+
+        Subcategory sub = null;
+        if (subcategoryIdOrNull != null) {
+            sub = subRepo.findByIdAndCategoryUserId(subcategoryIdOrNull, userId)
+                    .orElseThrow(() -> new IllegalArgumentException("Subcategory not found"));
+            if (!sub.getCategory().getId().equals(cat.getId())) {
+                throw new IllegalArgumentException("Subcategory must belong to selected category");
+            }
+        }
+
+        if (endDateOrNull != null && endDateOrNull.isBefore(startDate)) {
+            throw new IllegalArgumentException("End date must not be before start date");
+        }
+
+        RecurringTransaction r = recurring.save(RecurringTransaction.builder()
+                .user(users.getReferenceById(userId))
+                .type(type)
+                .amount(amount)
+                .category(cat)
+                .subcategory(sub)
+                .note(note)
+                .frequency(frequency)
+                .startDate(startDate)
+                .endDate(endDateOrNull)
+                .occurrences(0)
+                .nextDue(startDate)
+                .active(true)
+                .build());
+
+        materialise(List.of(r.getId()), LocalDate.now(ZONE));
+        return r;
+    }
+
+    @Transactional
+    public void delete(Long userId, Long id) {
+        RecurringTransaction r = recurring.findByIdAndUserId(id, userId)
+                .orElseThrow(() -> new IllegalArgumentException("Recurring transaction not found"));
+        // уже созданные транзакции остаются
+        recurring.delete(r);
+    }
+
+    /**
+     * Creates every occurrence of the given templates due on or before {@code today}, in one DB transaction.
+     * Each round inserts at most one occurrence per template, so a template that fell several periods
+     * behind catches up over several rounds. Returns the number of transactions created.
+     */
+    @Transactional
+    public int materialise(Collection<Long> templateIds, LocalDate today) {
+        // шаблоны, которые уже обрабатывает другой запуск, пропускаем — он их и догонит
+        List<Long> claimed = recurring.claimDue(templateIds, today);
+        if (claimed.isEmpty()) {
+            return 0;
+        }
+        // строки user_sync всех владельцев — заранее и по возрастанию id, см. SyncRepository.lockUsers
+        List<Long> owners = recurring.findUserIds(claimed);
+        sync.lockUsers(owners);
+        int created = 0;
+        for (int round = 0; round < MAX_CATCH_UP_ROUNDS; round++) {
+            List<Long> txIds = recurring.insertDueOccurrences(claimed, today);
+            if (txIds.isEmpty()) {
+                break;
+            }
+            ledger.recordInserted(txIds);
+            recurring.advance(claimed, today);
+            created += txIds.size();
+        }
+        // теги сбрасываем только владельцам шаблонов: при create() это один пользователь
+        if (created > 0) owners.forEach(versions::changed);
+        return created;
+    }
+}
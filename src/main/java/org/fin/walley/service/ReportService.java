@@ -0,0 +1,90 @@
+package org.fin.walley.service;
+
+import org.fin.walley.domain.TransactionType;
+import org.fin.walley.repo.MonthlyCategoryTotalRepository;
+import org.fin.walley.view.CategoryTotalView;
+import org.fin.walley.view.SubcategoryTotalView;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Spending reports. Reads only the pre-aggregated monthly_category_total rows, never raw tx.
+ */
+@Service
+public class ReportService {
+
+    private static final int MAX_TOP = 100;
+
+    private final MonthlyCategoryTotalRepository monthly;
+    private final CategoryService categoryService;
+
+    public ReportService(MonthlyCategoryTotalRepository monthly,
+                         CategoryService categoryService) {
+        this.monthly = monthly;
+        this.categoryService = categoryService;
+    }
+
+    public record MonthOverMonth(Long categoryId, String categoryName,
+                                 BigDecimal current, BigDecimal previous, BigDecimal change) {}
+
+    @Transactional(readOnly = true)
+    public List<CategoryTotalView> topCategories(Long userId, TransactionType type,
+                                                 YearMonth from, YearMonth to, int limit) {
+        requireOrdered(from, to);
+        int top = Math.max(1, Math.min(limit, MAX_TOP));
+        return monthly.topCategories(userId, type, from.atDay(1), to.atDay(1), Limit.of(top));
+    }
+
+    /**
+     * Per-category totals of {@code month} next to the month before it, biggest change first.
+     */
+    @Transactional(readOnly = true)
+    public List<MonthOverMonth> monthOverMonth(Long userId, TransactionType type, YearMonth month) {
+        List<CategoryTotalView> current = monthly.categoryTotalsForMonth(userId, type, month.atDay(1));
+        List<CategoryTotalView> previous = monthly.categoryTotalsForMonth(userId, type, month.minusMonths(1).atDay(1));
+
+        Map<Long, String> names = new LinkedHashMap<>();
+        Map<Long, BigDecimal> cur = new LinkedHashMap<>();
+        Map<Long, BigDecimal> prev = new LinkedHashMap<>();
+        for (CategoryTotalView v : current) {
+            names.put(v.categoryId(), v.categoryName());
+            cur.put(v.categoryId(), v.total());
+        }
+        for (CategoryTotalView v : previous) {
+            names.putIfAbsent(v.categoryId(), v.categoryName());
+            prev.put(v.categoryId(), v.total());
+        }
+
+        List<MonthOverMonth> result = new ArrayList<>();
+        for (Map.Entry<Long, String> e : names.entrySet()) {
+            BigDecimal c = cur.getOrDefault(e.getKey(), BigDecimal.ZERO);
+            BigDecimal p = prev.getOrDefault(e.getKey(), BigDecimal.ZERO);
+            result.add(new MonthOverMonth(e.getKey(), e.getValue(), c, p, c.subtract(p)));
+        }
+        result.sort(Comparator.comparing((MonthOverMonth m) -> m.change().abs()).reversed());
+        return result;
+    }
+
+    @Transactional(readOnly = true)
+    public List<SubcategoryTotalView> subcategoryBreakdown(Long userId, Long categoryId,
+                                                           YearMonth from, YearMonth to) {
+        requireOrdered(from, to);
+        categoryService.findOwned(userId, categoryId);
+        return monthly.subcategoryBreakdown(userId, categoryId, from.atDay(1), to.atDay(1));
+    }
+
+    private static void requireOrdered(YearMonth from, YearMonth to) {
+        if (from.isAfter(to)) {
+            throw new IllegalArgumentException("'from' must not be after 'to'");
+        }
+    }
+}
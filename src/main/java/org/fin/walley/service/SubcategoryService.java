@@ -3,8 +3,10 @@ package org.fin.walley.service;
 import org.fin.walley.domain.Category;
 import org.fin.walley.domain.Subcategory;
 import org.fin.walley.repo.CategoryRepository;
+import org.fin.walley.repo.RecurringTransactionRepository;
 import org.fin.walley.repo.SubcategoryRepository;
 import org.fin.walley.repo.TransactionRepository;
+import org.fin.walley.view.SubcategoryView;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -16,53 +18,72 @@ public class SubcategoryService {
     private final SubcategoryRepository subRepo;
     private final CategoryRepository catRepo;
     private final TransactionRepository txRepo;
+    private final LedgerService ledger;
+    private final RecurringTransactionRepository recurring;
+    private final DataVersionService versions;
 
     public SubcategoryService(SubcategoryRepository subRepo,
                               CategoryRepository catRepo,
-                              TransactionRepository txRepo) {
+                              TransactionRepository txRepo,
+                              LedgerService ledger,
+                              RecurringTransactionRepository recurring,
+                              DataVersionService versions) {
         this.subRepo = subRepo;
         this.catRepo = catRepo;
         this.txRepo = txRepo;
+        this.ledger = ledger;
+        this.recurring = recurring;
+        this.versions = versions;
     }
 
     @Transactional(readOnly = true)
-    public List<Subcategory> listForCategory(String username, Long categoryId) {
-        return subRepo.findByCategoryIdAndCategoryUserUsernameOrderByNameAsc(categoryId, username);
+    public List<Subcategory> listForCategory(Long userId, Long categoryId) {
+        return subRepo.findByCategoryIdAndCategoryUserIdOrderByNameAsc(categoryId, userId);
     }
 
     @Transactional(readOnly = true)
-    public Subcategory findOwned(String username, Long id) {
-        return subRepo.findByIdAndCategoryUserUsername(id, username)
+    public List<SubcategoryView> listViewsForCategory(Long userId, Long categoryId) {
+        return subRepo.findViewsByCategory(userId, categoryId);
+    }
+
+    @Transactional(readOnly = true)
+    public Subcategory findOwned(Long userId, Long id) {
+        return subRepo.findByIdAndCategoryUserId(id, userId)
                 .orElseThrow(() -> new IllegalArgumentException("Subcategory not found"));
     }
 
     @Transactional(readOnly = true)
-    public Category findOwnedCategory(String username, Long categoryId) {
-        return catRepo.findByIdAndUserUsername(categoryId, username)
+    public Category findOwnedCategory(Long userId, Long categoryId) {
+        return catRepo.findByIdAndUserId(categoryId, userId)
                 .orElseThrow(() -> new IllegalArgumentException("Category not found"));
     }
 
     @Transactional
-    public Subcategory create(String username, Long categoryId, Subcategory form) {
-        Category cat = findOwnedCategory(username, categoryId);
+    public Subcategory create(Long userId, Long categoryId, Subcategory form) {
+        Category cat = findOwnedCategory(userId, categoryId);
         form.setId(null);
         form.setCategory(cat);
+        versions.changed(userId);
         return subRepo.save(form);
     }
 
     @Transactional
-    public Subcategory update(String username, Long id, Subcategory form) {
-        Subcategory s = findOwned(username, id);
+    public Subcategory update(Long userId, Long id, Subcategory form) {
+        Subcategory s = findOwned(userId, id);
         s.setName(form.getName());
+        versions.changed(userId);
         return s;
     }
 
 
     @Transactional
-    public void delete(String username, Long id) {
+    public void delete(Long userId, Long id) {
 
-        findOwned(username, id);
-        txRepo.clearSubcategory(username, id);
+        findOwned(userId, id);
+        recurring.clearSubcategory(id);
+        ledger.detachSubcategory(id);
+        txRepo.clearSubcategory(userId, id);
         subRepo.deleteById(id);
+        versions.changed(userId);
     }
 }
\ No newline at end of file
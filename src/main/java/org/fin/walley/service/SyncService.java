@@ -0,0 +1,166 @@
+package org.fin.walley.service;
+
+import org.fin.walley.repo.SyncRepository;
+import org.fin.walley.repo.SyncRepository.SyncState;
+import org.fin.walley.repo.SyncRepository.TombstoneRow;
+import org.fin.walley.view.SyncView;
+import org.fin.walley.view.SyncView.TransactionChange;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Isolation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Delta sync for clients that keep a local copy of the user's data. Every write to the user's transactions,
+ * categories and subcategories gets the user's next revision (set by triggers, see V1__baseline.sql), deletes leave
+ * tombstones, so a sync reads only rows with a revision above the client's token: the cost follows the churn,
+ * not the history. Ids are never reused, so within a page the order of upserts and deletions does not matter.
+ * <p>
+ * Tokens are opaque to clients. A finished sync returns the revision it covered; a sync cut into pages
+ * returns a cursor that pins that revision, so rows changed while the client pages come with the next sync.
+ * A client without a token, or with one older than the oldest kept tombstone, gets a full snapshot.
+ */
+@Service
+public class SyncService {
+
+    private static final Logger log = LoggerFactory.getLogger(SyncService.class);
+
+    public static final int DEFAULT_LIMIT = 1000;
+    public static final int MAX_LIMIT = 5000;
+
+    private final SyncRepository sync;
+    private final Duration tombstoneRetention;
+
+    public SyncService(SyncRepository sync,
+                       @Value("${walley.sync.tombstone-retention:90d}") Duration tombstoneRetention) {
+        this.sync = sync;
+        this.tombstoneRetention = tombstoneRetention;
+    }
+
+    /**
+     * Changes after {@code since} (null: full snapshot), at most {@code limit} transactions and
+     * {@code limit} deletions per page. One snapshot per page, so a page is always consistent.
+     */
+    @Transactional(readOnly = true, isolation = Isolation.REPEATABLE_READ)
+    public SyncView changes(Long userId, String since, int limit) {
+        int pageSize = Math.clamp(limit, 1, MAX_LIMIT);
+        SyncState state = sync.state(userId);
+
+        Cursor cursor = Cursor.parse(since);
+        boolean firstPage = cursor == null || cursor.first();
+        if (cursor == null
+                || (cursor.since() >= 0 && cursor.since() < state.minRevision())
+                || cursor.upto() > state.revision()) {
+            // нет токена, надгробия после него уже удалены или токен из будущего (база восстановлена из копии)
+            cursor = Cursor.start(-1, state.revision());
+            firstPage = true;
+        } else if (cursor.first()) {
+            if (cursor.since() == state.revision()) {
+                return new SyncView(cursor.encode(), false, false, List.of(), List.of(), List.of(), List.of());
+            }
+            cursor = Cursor.start(cursor.since(), state.revision());
+        }
+        boolean reset = cursor.since() < 0;
+
+        List<TransactionChange> txs = sync.transactions(userId, cursor.since(), cursor.upto(),
+                cursor.txRevision(), cursor.txId(), pageSize + 1);
+        boolean more = txs.size() > pageSize;
+        if (more) txs = txs.subList(0, pageSize);
+        if (!txs.isEmpty()) {
+            TransactionChange last = txs.getLast();
+            cursor = cursor.withTx(last.revision(), last.id());
+        }
+
+        List<TombstoneRow> tombstones = List.of();
+        if (!reset) {
+            tombstones = sync.tombstones(userId, cursor.since(), cursor.upto(),
+                    cursor.deletedRevision(), cursor.deletedId(), pageSize + 1);
+            if (tombstones.size() > pageSize) {
+                more = true;
+                tombstones = tombstones.subList(0, pageSize);
+            }
+            if (!tombstones.isEmpty()) {
+                TombstoneRow last = tombstones.getLast();
+                cursor = cursor.withDeleted(last.deletion().revision(), last.id());
+            }
+        }
+
+        return new SyncView(
+                more ? cursor.encode() : Cursor.start(cursor.upto(), cursor.upto()).encode(),
+                reset,
+                more,
+                firstPage ? sync.categories(userId, cursor.since(), cursor.upto()) : List.of(),
+                firstPage ? sync.subcategories(userId, cursor.since(), cursor.upto()) : List.of(),
+                List.copyOf(txs),
+                tombstones.stream().map(TombstoneRow::deletion).toList());
+    }
+
+    /**
+     * Drops tombstones older than {@code walley.sync.tombstone-retention}. Clients that last synced before
+     * the newest dropped tombstone of their user get a full snapshot next time.
+     */
+    @Scheduled(cron = "${walley.sync.prune-cron:0 40 3 * * *}", zone = "Europe/Warsaw")
+    @Transactional
+    public void pruneTombstones() {
+        int pruned = sync.pruneTombstones(Instant.now().minus(tombstoneRetention));
+        if (pruned > 0) {
+            log.info("Pruned {} sync tombstones older than {}", pruned, tombstoneRetention);
+        }
+    }
+
+    /**
+     * Position of a sync: window (since, upto] of revisions and the keyset positions reached in tx and
+     * tombstones. {@code since} = -1 is a full snapshot. Encoded as "upto" when the window is done,
+     * "since:upto:txRevision:txId:deletedRevision:deletedId" while it is being paged.
+     */
+    record Cursor(long since, long upto, long txRevision, long txId, long deletedRevision, long deletedId) {
+
+        static Cursor start(long since, long upto) {
+            return new Cursor(since, upto, since, 0, since, 0);
+        }
+
+        // первая страница окна: клиент прислал только ревизию
+        boolean first() {
+            return since == upto && txId == 0 && deletedId == 0;
+        }
+
+        Cursor withTx(long revision, long id) {
+            return new Cursor(since, upto, revision, id, deletedRevision, deletedId);
+        }
+
+        Cursor withDeleted(long revision, long id) {
+            return new Cursor(since, upto, txRevision, txId, revision, id);
+        }
+
+        String encode() {
+            if (first()) return Long.toString(upto);
+            return since + ":" + upto + ":" + txRevision + ":" + txId + ":" + deletedRevision + ":" + deletedId;
+        }
+
+        static Cursor parse(String token) {
+            if (token == null || token.isBlank()) return null;
+            try {
+                String[] p = token.strip().split(":");
+                if (p.length == 1) {
+                    long revision = Long.parseLong(p[0]);
+                    if (revision < 0) throw new NumberFormatException();
+                    return start(revision, revision);
+                }
+                if (p.length == 6) {
+                    return new Cursor(Long.parseLong(p[0]), Long.parseLong(p[1]), Long.parseLong(p[2]),
+                            Long.parseLong(p[3]), Long.parseLong(p[4]), Long.parseLong(p[5]));
+                }
+            } catch (NumberFormatException ignored) {
+                // ниже
+            }
+            throw new IllegalArgumentException("Invalid sync token");
+        }
+    }
+}
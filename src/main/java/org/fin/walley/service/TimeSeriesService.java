@@ -0,0 +1,102 @@
+package org.fin.walley.service;
+
+import org.fin.walley.repo.DailyBalanceRepository;
+import org.fin.walley.view.LedgerTotals;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Income/expense series for charts, bucketed in the database from the daily_balance ledger.
+ */
+@Service
+public class TimeSeriesService {
+
+    private static final long MAX_BUCKETS = 5000;
+
+    public enum Granularity {
+        DAY(ChronoUnit.DAYS),
+        WEEK(ChronoUnit.WEEKS),
+        MONTH(ChronoUnit.MONTHS),
+        YEAR(ChronoUnit.YEARS);
+
+        private final ChronoUnit unit;
+
+        Granularity(ChronoUnit unit) {
+            this.unit = unit;
+        }
+
+        String sqlUnit() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /**
+     * Parallel arrays, one element per bucket. {@code balance} is the running balance at the end of each
+     * bucket (including everything before {@code from}) and is null unless requested.
+     */
+    public record TimeSeries(Granularity granularity,
+                             List<LocalDate> buckets,
+                             List<BigDecimal> income,
+                             List<BigDecimal> expense,
+                             List<BigDecimal> net,
+                             List<BigDecimal> balance) {}
+
+    private final DailyBalanceRepository balances;
+
+    public TimeSeriesService(DailyBalanceRepository balances) {
+        this.balances = balances;
+    }
+
+    @Transactional(readOnly = true)
+    public TimeSeries series(Long userId, LocalDate from, LocalDate to,
+                             Granularity granularity, boolean cumulative) {
+        if (from.isAfter(to)) {
+            throw new IllegalArgumentException("'from' must not be after 'to'");
+        }
+        if (granularity.unit.between(from, to) > MAX_BUCKETS) {
+            throw new IllegalArgumentException("Too many buckets; use a coarser granularity");
+        }
+
+        List<Object[]> rows = balances.bucketed(userId, granularity.sqlUnit(), from, to);
+
+        List<LocalDate> buckets = new ArrayList<>(rows.size());
+        List<BigDecimal> income = new ArrayList<>(rows.size());
+        List<BigDecimal> expense = new ArrayList<>(rows.size());
+        List<BigDecimal> net = new ArrayList<>(rows.size());
+        for (Object[] r : rows) {
+            BigDecimal in = (BigDecimal) r[1];
+            BigDecimal out = (BigDecimal) r[2];
+            buckets.add(toLocalDate(r[0]));
+            income.add(in);
+            expense.add(out);
+            net.add(in.subtract(out));
+        }
+
+        List<BigDecimal> balance = null;
+        if (cumulative) {
+            LedgerTotals opening = balances.totalsUpTo(userId, from.minusDays(1)).orElse(LedgerTotals.ZERO);
+            BigDecimal running = opening.income().subtract(opening.expense());
+            balance = new ArrayList<>(net.size());
+            for (BigDecimal n : net) {
+                running = running.add(n);
+                balance.add(running);
+            }
+        }
+
+        return new TimeSeries(granularity, buckets, income, expense, net, balance);
+    }
+
+    // драйвер/Hibernate может вернуть как java.sql.Date, так и LocalDate
+    private static LocalDate toLocalDate(Object v) {
+        if (v instanceof LocalDate d) return d;
+        if (v instanceof java.sql.Date d) return d.toLocalDate();
+        return LocalDate.parse(v.toString());
+    }
+}
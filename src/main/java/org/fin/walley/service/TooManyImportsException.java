@@ -0,0 +1,16 @@
+package org.fin.walley.service;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * The user already has as many import jobs queued or running as {@link ImportJobService} allows;
+ * the upload was refused before anything was written to disk.
+ */
+@ResponseStatus(HttpStatus.TOO_MANY_REQUESTS)
+public class TooManyImportsException extends RuntimeException {
+
+    public TooManyImportsException(int limit) {
+        super("Too many imports in progress (at most " + limit + "), wait for one to finish");
+    }
+}
@@ -0,0 +1,394 @@
+package org.fin.walley.service;
+
+import com.opencsv.CSVWriter;
+import jakarta.persistence.EntityManager;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import org.fin.walley.domain.*;
+import org.fin.walley.repo.AppUserRepository;
+import org.fin.walley.repo.BulkImportRepository;
+import org.fin.walley.repo.ImportLookupRepository;
+import org.fin.walley.repo.SyncRepository;
+import org.fin.walley.repo.TransactionRepository;
+import org.fin.walley.service.ImportExportService.CsvRow;
+import org.fin.walley.service.ImportExportService.JsonRow;
+import org.fin.walley.service.ImportExportService.Parsed;
+import org.fin.walley.view.AdminTxRow;
+import org.postgresql.copy.PGCopyOutputStream;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Streaming imports for the user and admin upload endpoints.
+ * Rows are parsed and checked ahead of the writer (CSV in parallel, see {@link CsvPipeline}), buffered
+ * into chunks of {@link #CHUNK_SIZE} and each chunk is resolved, written and committed in its own
+ * transaction, after which the persistence context is cleared. Heap use is bounded by the chunk size,
+ * not the upload size. Bad rows are reported to the
+ * {@link ImportProgress}: {@link ImportProgress#FAIL_FAST} stops at the first one (chunks committed before it
+ * stay imported and the error says how many rows that was), a background job skips and lists them.
+ */
+@Service
+public class TransactionImportService {
+
+    public static final int CHUNK_SIZE = 1000;
+
+    private final ImportExportService parser;
+    private final TransactionRepository txRepo;
+    private final AppUserRepository userRepo;
+    private final ImportLookupRepository lookups;
+    private final BulkImportRepository bulk;
+    private final SyncRepository sync;
+    private final LedgerService ledger;
+    private final DataVersionService versions;
+    private final Validator validator;
+    private final EntityManager em;
+    private final TransactionTemplate chunkTx;
+
+    public TransactionImportService(ImportExportService parser,
+                                    TransactionRepository txRepo,
+                                    AppUserRepository userRepo,
+                                    ImportLookupRepository lookups,
+                                    BulkImportRepository bulk,
+                                    SyncRepository sync,
+                                    LedgerService ledger,
+                                    DataVersionService versions,
+                                    Validator validator,
+                                    EntityManager em,
+                                    PlatformTransactionManager txManager) {
+        this.parser = parser;
+        this.txRepo = txRepo;
+        this.userRepo = userRepo;
+        this.lookups = lookups;
+        this.bulk = bulk;
+        this.sync = sync;
+        this.ledger = ledger;
+        this.versions = versions;
+        this.validator = validator;
+        this.em = em;
+        this.chunkTx = new TransactionTemplate(txManager);
+    }
+
+    // --------- точки входа; возвращают число импортированных строк ---------
+    // dedup: строки, которые у пользователя уже есть, пропускаются (ImportDeduplicator) и считаются в rowsSkipped
+
+    public int importUserCsv(String username, InputStream in, boolean dedup, ImportProgress progress) {
+        ImportResolver resolver = newResolver();
+        ImportDeduplicator duplicates = newDeduplicator(dedup);
+        return run(chunk -> writeNamed(resolver, duplicates, chunk, progress), progress,
+                sink -> parser.readCsvRows(in, this::csvRowError, progress, p -> sink.accept(asAdminRow(username, p))));
+    }
+
+    public int importUserJson(String username, InputStream in, boolean dedup, ImportProgress progress) {
+        AppUser user = userRepo.findByUsername(username)
+                .orElseThrow(() -> new IllegalArgumentException("User not found"));
+        ImportResolver resolver = newResolver();
+        ImportDeduplicator duplicates = newDeduplicator(dedup);
+        return run(chunk -> writeById(resolver, duplicates, user, chunk, progress), progress,
+                sink -> parser.readJsonArray(in, JsonRow.class, sink));
+    }
+
+    public int importAdminCsv(InputStream in, boolean dedup, ImportProgress progress) {
+        ImportResolver resolver = newResolver();
+        ImportDeduplicator duplicates = newDeduplicator(dedup);
+        return run(chunk -> writeNamed(resolver, duplicates, chunk, progress), progress,
+                sink -> parser.readAdminCsvRows(in, this::adminRowError, progress, sink));
+    }
+
+    public int importAdminJson(InputStream in, boolean dedup, ImportProgress progress) {
+        ImportResolver resolver = newResolver();
+        ImportDeduplicator duplicates = newDeduplicator(dedup);
+        return run(chunk -> writeNamed(resolver, duplicates, chunk, progress), progress,
+                sink -> parser.readJsonArray(in, AdminTxRow.class, p -> {
+                    String error = adminRowError(p.row());
+                    if (error != null) rowFailed(progress, p, error);
+                    else sink.accept(p);
+                }));
+    }
+
+    /**
+     * COPY fast path for large admin migrations. Same row format, validation and messages as
+     * {@link #importAdminCsv}, but rows are streamed into a staging table with COPY FROM STDIN and moved
+     * into tx by a few set-based statements. Runs as a single transaction: all accepted rows or none,
+     * so cancelling it discards everything. No dedup mode: use {@link #importAdminCsv} for overlapping files.
+     */
+    public int importAdminCsvBulk(InputStream in, ImportProgress progress) {
+        Integer inserted = chunkTx.execute(status -> {
+            bulk.createStagingTables();
+            copyIntoStage(in, progress);
+            bulk.analyzeStage();
+            sync.lockUsers(bulk.stagedUserIds());
+
+            bulk.unknownUsers(u -> progress.rowFailed(u.line(), "Row " + u.line() + ": User not found: " + u.username()));
+            bulk.insertMissingCategories();
+            bulk.insertMissingSubcategories();
+            int n = bulk.insertTransactions();
+            ledger.recordBulkImported();
+            versions.changedAll();
+            return n;
+        });
+        int n = inserted != null ? inserted : 0;
+        progress.rowsImported(n);
+        return n;
+    }
+
+    private void copyIntoStage(InputStream in, ImportProgress progress) {
+        PGCopyOutputStream copy = bulk.openStageCopy();
+        try {
+            CSVWriter out = new CSVWriter(new BufferedWriter(new OutputStreamWriter(copy, StandardCharsets.UTF_8)));
+            parser.readAdminCsvRows(in, this::adminRowError, progress, p -> {
+                if (progress.cancelled()) throw new CancellationException("Import cancelled");
+                AdminTxRow r = p.row();
+                // в COPY csv NULL — только пустое поле без кавычек: null CSVWriter так и пишет, а значения
+                // (в том числе "") берёт в кавычки, поэтому в stage попадает ровно то, что пишет чанковый путь
+                out.writeNext(new String[]{
+                        Long.toString(p.line()),
+                        r.username(),
+                        r.type().name(),
+                        r.amount().toPlainString(),
+                        r.date().toString(),
+                        r.category(),
+                        r.subcategory(),
+                        r.note()
+                }, true);
+            });
+            out.flush();
+            copy.endCopy();
+        } catch (IOException | SQLException e) {
+            cancel(copy);
+            throw new IllegalStateException("Bulk import failed: " + e.getMessage(), e);
+        } catch (RuntimeException e) {
+            cancel(copy);
+            throw e;
+        }
+    }
+
+    private static void cancel(PGCopyOutputStream copy) {
+        try {
+            if (copy.isActive()) copy.cancelCopy();
+        } catch (SQLException ignored) {
+            // транзакция всё равно откатывается
+        }
+    }
+
+    private ImportResolver newResolver() {
+        return new ImportResolver(userRepo, lookups, sync);
+    }
+
+    private ImportDeduplicator newDeduplicator(boolean dedup) {
+        return dedup ? new ImportDeduplicator(lookups) : null;
+    }
+
+    private <T> int run(Function<List<Parsed<T>>, Integer> writeChunk, ImportProgress progress,
+                        Consumer<Consumer<Parsed<T>>> source) {
+        ChunkWriter<T> writer = new ChunkWriter<>(writeChunk, progress);
+        try {
+            source.accept(writer);
+            writer.flush();
+        } catch (IllegalArgumentException e) {
+            if (writer.written == 0) throw e;
+            throw new IllegalArgumentException(e.getMessage() + " (" + writer.written + " rows before it were imported)", e);
+        }
+        return writer.written;
+    }
+
+    private final class ChunkWriter<T> implements Consumer<Parsed<T>> {
+
+        private final Function<List<Parsed<T>>, Integer> writeChunk;
+        private final ImportProgress progress;
+        private final List<Parsed<T>> buffer = new ArrayList<>(CHUNK_SIZE);
+        private int written;
+
+        ChunkWriter(Function<List<Parsed<T>>, Integer> writeChunk, ImportProgress progress) {
+            this.writeChunk = writeChunk;
+            this.progress = progress;
+        }
+
+        @Override
+        public void accept(Parsed<T> row) {
+            // незаписанный буфер отбрасывается, закоммиченные пачки остаются
+            if (progress.cancelled()) throw new CancellationException("Import cancelled");
+            buffer.add(row);
+            if (buffer.size() >= CHUNK_SIZE) {
+                flush();
+            }
+        }
+
+        void flush() {
+            if (buffer.isEmpty()) return;
+            Integer n = chunkTx.execute(status -> writeChunk.apply(buffer));
+            int count = n != null ? n : 0;
+            written += count;
+            buffer.clear();
+            progress.rowsImported(count);
+        }
+    }
+
+    // --------- запись одной пачки (внутри транзакции пачки) ---------
+
+    /**
+     * Rows that name their user and category; missing categories/subcategories are created.
+     * All names are resolved to ids up front by the resolver, rows then only reference them.
+     * Rows arrive already checked by {@link #adminRowError}; rows of unknown users go to {@code progress}.
+     * With {@code duplicates} set, rows the user already has are dropped before anything is written.
+     */
+    private int writeNamed(ImportResolver resolver, ImportDeduplicator duplicates,
+                           List<Parsed<AdminTxRow>> chunk, ImportProgress progress) {
+        resolver.prepare(chunk);
+
+        List<Transaction> batch = new ArrayList<>(chunk.size());
+        Set<Long> touched = new HashSet<>();
+        int skipped = 0;
+        for (Parsed<AdminTxRow> p : chunk) {
+            AdminTxRow r = p.row();
+            Long userId = resolver.userId(r.username());
+            if (userId == null) {
+                rowFailed(progress, p, "User not found: " + r.username());
+                continue;
+            }
+            Long categoryId = resolver.categoryId(userId, r.type(), r.category());
+            Long subcategoryId = r.subcategory() == null || r.subcategory().isBlank()
+                    ? null
+                    : resolver.subcategoryId(categoryId, r.subcategory());
+
+            if (duplicates != null
+                    && duplicates.isDuplicate(userId, r.type(), r.amount(), r.date(), categoryId, subcategoryId, r.note())) {
+                skipped++;
+                continue;
+            }
+            batch.add(newTransaction(userId, r.type(), r.amount(), r.date(), categoryId, subcategoryId, r.note()));
+            touched.add(userId);
+        }
+
+        progress.rowsSkipped(skipped);
+        touched.forEach(versions::changed);
+        return save(batch);
+    }
+
+    /**
+     * Rows that reference the user's existing categories by id (same rules as {@link TransactionService#create}).
+     */
+    private int writeById(ImportResolver resolver, ImportDeduplicator duplicates, AppUser user,
+                          List<Parsed<JsonRow>> chunk, ImportProgress progress) {
+        Long userId = user.getId();
+        resolver.prepareUser(userId);
+
+        List<Transaction> batch = new ArrayList<>(chunk.size());
+        int skipped = 0;
+        for (Parsed<JsonRow> p : chunk) {
+            JsonRow r = p.row();
+            String error = byIdError(resolver, userId, r);
+            Transaction t = null;
+            if (error == null) {
+                t = newTransaction(userId, r.type(), r.amount(), r.date(), r.categoryId(), r.subcategoryId(), r.note());
+                error = violation(t);
+            }
+            if (error != null) {
+                rowFailed(progress, p, error);
+            } else if (duplicates != null && duplicates.isDuplicate(userId, r.type(), r.amount(), r.date(),
+                    r.categoryId(), r.subcategoryId(), r.note())) {
+                skipped++;
+            } else {
+                batch.add(t);
+            }
+        }
+
+        progress.rowsSkipped(skipped);
+        versions.changed(userId);
+        return save(batch);
+    }
+
+    private static String byIdError(ImportResolver resolver, Long userId, JsonRow r) {
+        if (r.categoryId() == null) return "categoryId is required";
+
+        TransactionType categoryType = resolver.categoryTypeOwnedBy(userId, r.categoryId());
+        if (categoryType == null) {
+            return "Category not found";
+        }
+        if (categoryType != r.type()) {
+            return "Category type must match transaction type";
+        }
+
+        if (r.subcategoryId() != null) {
+            Long parent = resolver.parentOf(r.subcategoryId());
+            if (parent == null) {
+                return "Subcategory not found";
+            }
+            if (!parent.equals(r.categoryId())) {
+                return "Subcategory must belong to selected category";
+            }
+        }
+        return null;
+    }
+
+    // ссылки по id без SELECT: getReference отдаёт прокси
+    private Transaction newTransaction(Long userId, TransactionType type, BigDecimal amount, LocalDate date,
+                                       Long categoryId, Long subcategoryId, String note) {
+        return Transaction.builder()
+                .user(em.getReference(AppUser.class, userId))
+                .type(type)
+                .amount(amount)
+                .date(date)
+                .category(em.getReference(Category.class, categoryId))
+                .subcategory(subcategoryId != null ? em.getReference(Subcategory.class, subcategoryId) : null)
+                .note(note)
+                .build();
+    }
+
+    private int save(List<Transaction> batch) {
+        if (batch.isEmpty()) return 0;
+        txRepo.saveAll(batch);
+        txRepo.flush();
+        ledger.recordInserted(batch.stream().map(Transaction::getId).toList());
+        // пачка записана — отпускаем сущности, чтобы контекст не рос от пачки к пачке
+        em.clear();
+        return batch.size();
+    }
+
+    // --------- проверки строк до записи; для CSV выполняются параллельно в CsvPipeline ---------
+
+    private String csvRowError(CsvRow r) {
+        return violation(Transaction.builder().type(r.type()).amount(r.amount()).date(r.date()).note(r.note()).build());
+    }
+
+    private String adminRowError(AdminTxRow r) {
+        if (r.username() == null || r.username().isBlank()) return "username is required";
+        if (r.type() == null) return "type is required";
+        if (r.category() == null || r.category().isBlank()) return "category is required";
+        return violation(Transaction.builder().type(r.type()).amount(r.amount()).date(r.date()).note(r.note()).build());
+    }
+
+    /** First bean-validation message for the row, or null if it is valid. */
+    private String violation(Transaction t) {
+        Set<ConstraintViolation<Transaction>> violations = validator.validate(t);
+        if (violations.isEmpty()) return null;
+        ConstraintViolation<Transaction> v = violations.iterator().next();
+        return v.getPropertyPath() + " " + v.getMessage();
+    }
+
+    private static Parsed<AdminTxRow> asAdminRow(String username, Parsed<CsvRow> p) {
+        CsvRow r = p.row();
+        return new Parsed<>(p.line(), new AdminTxRow(username, r.type(), r.amount(), r.date(),
+                r.category(), r.subcategory(), r.note()));
+    }
+
+    private static void rowFailed(ImportProgress progress, Parsed<?> p, String message) {
+        progress.rowFailed(p.line(), "Row " + p.line() + ": " + message);
+    }
+}
@@ -2,81 +2,233 @@ package org.fin.walley.service;
 
 import org.fin.walley.domain.*;
 import org.fin.walley.repo.*;
+import org.fin.walley.view.AdminTxRow;
+import org.fin.walley.view.LedgerTotals;
+import org.fin.walley.view.TransactionView;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 public class TransactionService {
 
+    public static final int DEFAULT_PAGE_SIZE = 50;
+    public static final int MAX_PAGE_SIZE = 200;
+
+    private static final Sort NEWEST_FIRST = Sort.by(Sort.Order.desc("date"), Sort.Order.desc("id"));
+
     private final TransactionRepository txRepo;
     private final AppUserRepository users;
     private final CategoryRepository catRepo;
     private final SubcategoryRepository subRepo;
+    private final LedgerService ledger;
+    private final DataVersionService versions;
 
     public TransactionService(TransactionRepository txRepo,
                               AppUserRepository users,
                               CategoryRepository catRepo,
-                              SubcategoryRepository subRepo) {
+                              SubcategoryRepository subRepo,
+                              LedgerService ledger,
+                              DataVersionService versions) {
         this.txRepo = txRepo;
         this.users = users;
         this.catRepo = catRepo;
         this.subRepo = subRepo;
+        this.ledger = ledger;
+        this.versions = versions;
+    }
+
+    public record TxPage(List<TransactionView> items, String nextCursor) {
+        public boolean hasNext() {
+            return nextCursor != null;
+        }
     }
 
+    /**
+     * One page of the user's transactions in (date desc, id desc) order.
+     * {@code cursor} is the {@link TxPage#nextCursor()} of the previous page, or null for the first page.
+     */
     @Transactional(readOnly = true)
-    public List<Transaction> listForUser(String username) {
-        return txRepo.findByUserUsernameOrderByDateDescIdDesc(username);
+    public TxPage pageForUser(Long userId, String cursor, int size) {
+        int pageSize = clampPageSize(size);
+        // на одну строку больше — чтобы понять, есть ли следующая страница
+        Limit probe = Limit.of(pageSize + 1);
+
+        List<TransactionView> rows;
+        if (cursor == null || cursor.isBlank()) {
+            rows = txRepo.findFirstPage(userId, probe);
+        } else {
+            TxCursor after = TxCursor.decode(cursor);
+            rows = txRepo.findPageAfter(userId, after.date(), after.id(), probe);
+        }
+
+        return toPage(rows, pageSize);
     }
 
+    /**
+     * Same keyset paging as {@link #pageForUser}, narrowed by {@code filter}; filters and the seek
+     * predicate go into one SQL query.
+     */
     @Transactional(readOnly = true)
-    public Transaction findOwned(String username, Long id) {
-        return txRepo.findByIdAndUserUsername(id, username)
-                .orElseThrow(() -> new IllegalArgumentException("Transaction not found"));
+    public TxPage queryForUser(Long userId, TxFilter filter, String cursor, int size) {
+        int pageSize = clampPageSize(size);
+
+        Specification<Transaction> spec = filter.toSpec(userId).and(TransactionSpecs.fetchCategories());
+        if (cursor != null && !cursor.isBlank()) {
+            TxCursor after = TxCursor.decode(cursor);
+            spec = spec.and(TransactionSpecs.after(after.date(), after.id()));
+        }
+
+        List<TransactionView> rows = txRepo.findBy(spec, q -> q.sortBy(NEWEST_FIRST).limit(pageSize + 1).all())
+                .stream().map(TransactionView::of).toList();
+        return toPage(rows, pageSize);
     }
 
     @Transactional(readOnly = true)
-    public AppUser requireUser(String username) {
-        return users.findByUsername(username)
-                .orElseThrow(() -> new IllegalArgumentException("User not found"));
+    public List<TransactionView> listForUser(Long userId, TxFilter filter) {
+        return txRepo.findAll(filter.toSpec(userId).and(TransactionSpecs.fetchCategories()), NEWEST_FIRST)
+                .stream().map(TransactionView::of).toList();
     }
 
-    @Transactional
-    public Transaction create(String username, Transaction tx, Long categoryId, Long subcategoryIdOrNull) {
-        AppUser u = requireUser(username);
+    /**
+     * Hands {@code consumer} a forward-only stream of the user's filtered transactions, newest first,
+     * open for the duration of the call. For exports: nothing is collected in memory.
+     */
+    @Transactional(readOnly = true)
+    public void streamForUser(Long userId, TxFilter filter, Consumer<Stream<TransactionView>> consumer) {
+        Specification<Transaction> spec = filter.toSpec(userId).and(TransactionSpecs.fetchCategories());
+        try (Stream<TransactionView> rows = txRepo.streamViews(spec, NEWEST_FIRST)) {
+            consumer.accept(rows);
+        }
+    }
+
+    /**
+     * Admin export: every user's transactions as flat rows, ordered by username then newest first,
+     * streamed for the duration of the call.
+     */
+    @Transactional(readOnly = true)
+    public void streamAllForAdmin(Consumer<Stream<AdminTxRow>> consumer) {
+        try (Stream<AdminTxRow> rows = txRepo.streamAllForAdminExport()) {
+            consumer.accept(rows);
+        }
+    }
+
+    public record SearchPage(List<TransactionView> items, int page, boolean hasNext) {}
+
+    /**
+     * Ranked note search. Every word of {@code text} must match as a word prefix ("dent" finds "Dentist").
+     */
+    @Transactional(readOnly = true)
+    public SearchPage searchNotes(Long userId, String text, int page, int size) {
+        int pageSize = clampPageSize(size);
+        int pageNo = Math.max(page, 0);
 
-        Category cat = catRepo.findByIdAndUserUsername(categoryId, username)
+        String tsQuery = toPrefixTsQuery(text);
+        if (tsQuery.isEmpty()) {
+            return new SearchPage(List.of(), pageNo, false);
+        }
+
+        List<Long> ids = txRepo.searchNoteIds(userId, tsQuery, pageSize + 1, (long) pageNo * pageSize);
+        boolean hasNext = ids.size() > pageSize;
+        if (hasNext) {
+            ids = ids.subList(0, pageSize);
+        }
+        return new SearchPage(inRankOrder(ids), pageNo, hasNext);
+    }
+
+    // второй запрос теряет порядок ранжирования — восстанавливаем по позиции id
+    private List<TransactionView> inRankOrder(List<Long> ids) {
+        if (ids.isEmpty()) return List.of();
+        Map<Long, Integer> rank = new HashMap<>();
+        for (int i = 0; i < ids.size(); i++) {
+            rank.put(ids.get(i), i);
+        }
+        return txRepo.findViewsByIdIn(ids).stream()
+                .sorted(Comparator.comparing(v -> rank.get(v.id())))
+                .toList();
+    }
+
+    // только буквы/цифры — в to_tsquery не попадает никакой синтаксис от пользователя
+    static String toPrefixTsQuery(String text) {
+        if (text == null) return "";
+        return Arrays.stream(text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+"))
+                .filter(w -> !w.isEmpty())
+                .map(w -> w + ":*")
+                .collect(Collectors.joining(" & "));
+    }
+
+    private static TxPage toPage(List<TransactionView> rows, int pageSize) {
+        if (rows.size() <= pageSize) {
+            return new TxPage(rows, null);
+        }
+        List<TransactionView> items = rows.subList(0, pageSize);
+        return new TxPage(items, TxCursor.of(items.get(pageSize - 1)).encode());
+    }
+
+    public static int clampPageSize(int size) {
+        if (size <= 0) return DEFAULT_PAGE_SIZE;
+        return Math.min(size, MAX_PAGE_SIZE);
+    }
+
+    @Transactional(readOnly = true)
+    public Transaction findOwned(Long userId, Long id) {
+        return txRepo.findByIdAndUserId(id, userId)
+                .orElseThrow(() -> new IllegalArgumentException("Transaction not found"));
+    }
+
+    /**
+     * {@code userId} comes from the authenticated principal; the user row is not read, only referenced
+     * (the owned category lookup already proves it exists).
+     */
+    @Transactional
+    public Transaction create(Long userId, Transaction tx, Long categoryId, Long subcategoryIdOrNull) {
+        Category cat = catRepo.findByIdAndUserId(categoryId, userId)
                 .orElseThrow(() -> new IllegalArgumentException("Category not found"));
 
         if (cat.getType() != tx.getType()) {
             throw new IllegalArgumentException("Category type must match transaction type");
         }
 
-        Subcategory sub = resolveSubcategory(username, cat, subcategoryIdOrNull);
+        Subcategory sub = resolveSubcategory(userId, cat, subcategoryIdOrNull);
 
         tx.setId(null);
-        tx.setUser(u);
+        tx.setUser(users.getReferenceById(userId));
         tx.setCategory(cat);
         tx.setSubcategory(sub);
 
-        return txRepo.save(tx);
+        Transaction saved = txRepo.save(tx);
+        ledger.record(LedgerService.Entry.of(saved));
+        versions.changed(userId);
+        return saved;
     }
 
     @Transactional
-    public Transaction update(String username, Long id, Transaction form, Long categoryId, Long subcategoryIdOrNull) {
-        Transaction tx = findOwned(username, id);
+    public Transaction update(Long userId, Long id, Transaction form, Long categoryId, Long subcategoryIdOrNull) {
+        Transaction tx = findOwned(userId, id);
+        LedgerService.Entry before = LedgerService.Entry.of(tx);
 
-        Category cat = catRepo.findByIdAndUserUsername(categoryId, username)
+        Category cat = catRepo.findByIdAndUserId(categoryId, userId)
                 .orElseThrow(() -> new IllegalArgumentException("Category not found"));
 
         if (cat.getType() != form.getType()) {
             throw new IllegalArgumentException("Category type must match transaction type");
         }
 
-        Subcategory sub = resolveSubcategory(username, cat, subcategoryIdOrNull);
+        Subcategory sub = resolveSubcategory(userId, cat, subcategoryIdOrNull);
 
         tx.setType(form.getType());
         tx.setAmount(form.getAmount());
@@ -85,39 +237,45 @@ public class TransactionService {
         tx.setSubcategory(sub);
         tx.setNote(form.getNote());
 
-        return txRepo.save(tx);
+        Transaction saved = txRepo.save(tx);
+        ledger.reverse(before);
+        ledger.record(LedgerService.Entry.of(saved));
+        versions.changed(userId);
+        return saved;
     }
 
     @Transactional
-    public void delete(String username, Long id) {
-        Transaction tx = findOwned(username, id);
+    public void delete(Long userId, Long id) {
+        Transaction tx = findOwned(userId, id);
+        ledger.reverse(LedgerService.Entry.of(tx));
         txRepo.delete(tx);
+        versions.changed(userId);
     }
 
     public record Totals(BigDecimal income, BigDecimal expense, BigDecimal balance) {}
 
+    // суммы читаются из журнала (user_balance и дни после asOf в daily_balance), а не сканированием tx
+
     @Transactional(readOnly = true)
-    public Totals totalsForUser(String username) {
-        BigDecimal income = txRepo.sumAmountByUserAndType(username, TransactionType.INCOME);
-        BigDecimal expense = txRepo.sumAmountByUserAndType(username, TransactionType.EXPENSE);
-        BigDecimal balance = income.subtract(expense);
-        return new Totals(income, expense, balance);
+    public Totals totalsForUser(Long userId) {
+        return toTotals(ledger.totals(userId));
     }
 
     @Transactional(readOnly = true)
-    public Totals totalsForUserUpTo(String username, LocalDate asOf) {
-        BigDecimal income = txRepo.sumAmountByUserAndTypeUpToDate(username, TransactionType.INCOME, asOf);
-        BigDecimal expense = txRepo.sumAmountByUserAndTypeUpToDate(username, TransactionType.EXPENSE, asOf);
-        BigDecimal balance = income.subtract(expense);
-        return new Totals(income, expense, balance);
+    public Totals totalsForUserUpTo(Long userId, LocalDate asOf) {
+        return toTotals(ledger.totalsUpTo(userId, asOf));
+    }
+
+    private static Totals toTotals(LedgerTotals t) {
+        return new Totals(t.income(), t.expense(), t.income().subtract(t.expense()));
     }
 
-    private Subcategory resolveSubcategory(String username, Category cat, Long subcategoryIdOrNull) {
+    private Subcategory resolveSubcategory(Long userId, Category cat, Long subcategoryIdOrNull) {
         if (subcategoryIdOrNull == null) {
             return null;
         }
 
-        Subcategory sub = subRepo.findByIdAndCategoryUserUsername(subcategoryIdOrNull, username)
+        Subcategory sub = subRepo.findByIdAndCategoryUserId(subcategoryIdOrNull, userId)
                 .orElseThrow(() -> new IllegalArgumentException("Subcategory not found"));
 
         if (!sub.getCategory().getId().equals(cat.getId())) {
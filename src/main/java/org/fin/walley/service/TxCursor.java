@@ -0,0 +1,33 @@
+package org.fin.walley.service;
+
+import org.fin.walley.view.TransactionView;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Base64;
+
+/**
+ * Keyset position in the (date desc, id desc) ordering of a user's transactions.
+ * Clients only ever see the opaque {@link #encode()} form.
+ */
+public record TxCursor(LocalDate date, Long id) {
+
+    public static TxCursor of(TransactionView tx) {
+        return new TxCursor(tx.date(), tx.id());
+    }
+
+    public String encode() {
+        String raw = date + ":" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static TxCursor decode(String token) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int sep = raw.indexOf(':');
+            return new TxCursor(LocalDate.parse(raw.substring(0, sep)), Long.parseLong(raw.substring(sep + 1)));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package org.fin.walley.service;
+
+import org.fin.walley.domain.Transaction;
+import org.fin.walley.domain.TransactionType;
+import org.fin.walley.repo.TransactionSpecs;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.format.annotation.DateTimeFormat;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Optional server-side filters for a user's transactions. Null / empty fields are ignored.
+ * Bound straight from query parameters, e.g. {@code ?from=2025-01-01&type=EXPENSE&categoryIds=3&categoryIds=7}.
+ */
+public record TxFilter(
+        @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+        @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+        TransactionType type,
+        List<Long> categoryIds,
+        List<Long> subcategoryIds,
+        BigDecimal minAmount,
+        BigDecimal maxAmount,
+        String note
+) {
+
+    public static TxFilter none() {
+        return new TxFilter(null, null, null, null, null, null, null, null);
+    }
+
+    public Specification<Transaction> toSpec(Long userId) {
+        List<Specification<Transaction>> specs = new ArrayList<>();
+        specs.add(TransactionSpecs.ownedBy(userId));
+
+        if (from != null) specs.add(TransactionSpecs.dateFrom(from));
+        if (to != null) specs.add(TransactionSpecs.dateTo(to));
+        if (type != null) specs.add(TransactionSpecs.ofType(type));
+        if (categoryIds != null && !categoryIds.isEmpty()) specs.add(TransactionSpecs.categoryIn(categoryIds));
+        if (subcategoryIds != null && !subcategoryIds.isEmpty()) specs.add(TransactionSpecs.subcategoryIn(subcategoryIds));
+        if (minAmount != null) specs.add(TransactionSpecs.amountAtLeast(minAmount));
+        if (maxAmount != null) specs.add(TransactionSpecs.amountAtMost(maxAmount));
+        if (note != null && !note.isBlank()) specs.add(TransactionSpecs.noteContains(note.trim()));
+
+        return Specification.allOf(specs);
+    }
+}
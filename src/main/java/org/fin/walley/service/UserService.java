@@ -3,8 +3,10 @@ import org.fin.walley.domain.AppUser;
 import org.fin.walley.domain.Role;
 import org.fin.walley.repo.AppUserRepository;
 import org.fin.walley.repo.CategoryRepository;
+import org.fin.walley.repo.RecurringTransactionRepository;
 import org.fin.walley.repo.SubcategoryRepository;
 import org.fin.walley.repo.TransactionRepository;
+import org.fin.walley.view.UserView;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -22,18 +24,27 @@ public class UserService {
     private final SubcategoryRepository subRepo;
     private final CategoryRepository catRepo;
     private final PasswordEncoder passwordEncoder;
+    private final LedgerService ledger;
+    private final RecurringTransactionRepository recurring;
+    private final DataVersionService versions;
 
 
     public UserService(AppUserRepository userRepo,
                        TransactionRepository txRepo,
                        SubcategoryRepository subRepo,
                        CategoryRepository catRepo,
-                       PasswordEncoder passwordEncoder) {
+                       PasswordEncoder passwordEncoder,
+                       LedgerService ledger,
+                       RecurringTransactionRepository recurring,
+                       DataVersionService versions) {
         this.userRepo = userRepo;
         this.txRepo = txRepo;
         this.subRepo = subRepo;
         this.catRepo = catRepo;
         this.passwordEncoder = passwordEncoder;
+        this.ledger = ledger;
+        this.recurring = recurring;
+        this.versions = versions;
     }
 
 
@@ -44,6 +55,12 @@ public class UserService {
     }
 
 
+    @Transactional(readOnly = true)
+    public List<UserView> findAllViews() {
+        return userRepo.findAllViews();
+    }
+
+
     public AppUser findById(Long id) {
         return userRepo.findById(id)
                 .orElseThrow(() -> new IllegalArgumentException("User not found: id=" + id));
@@ -128,13 +145,18 @@ public class UserService {
     @Transactional
     public void delete(Long userId) {
         if (userId == null) return;
-        if (!userRepo.existsById(userId)) return;
+        AppUser user = userRepo.findById(userId).orElse(null);
+        if (user == null) return;
 
 
 
+        recurring.deleteAllForUser(userId);
+        ledger.removeUser(userId);
         txRepo.deleteAllForUser(userId);
         subRepo.deleteAllForUser(userId);
         catRepo.deleteAllForUser(userId);
         userRepo.deleteById(userId);
+        // id не переиспользуются — счётчик удалённого пользователя больше не нужен
+        versions.forget(userId);
     }
 }
\ No newline at end of file
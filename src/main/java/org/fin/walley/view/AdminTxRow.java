@@ -0,0 +1,19 @@
+package org.fin.walley.view;
+
+import org.fin.walley.domain.TransactionType;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * One transaction of any user in the admin export/import format (CSV columns and JSON fields).
+ */
+public record AdminTxRow(
+        String username,
+        TransactionType type,
+        BigDecimal amount,
+        LocalDate date,
+        String category,
+        String subcategory,
+        String note
+) {}
@@ -0,0 +1,17 @@
+package org.fin.walley.view;
+
+import org.fin.walley.domain.BudgetPeriod;
+
+import java.math.BigDecimal;
+
+public record BudgetStatusRow(
+        Long budgetId,
+        Long categoryId,
+        String categoryName,
+        Long subcategoryId,
+        String subcategoryName,
+        BudgetPeriod period,
+        BigDecimal limitAmount,
+        int alertPercent,
+        BigDecimal spent
+) {}
@@ -0,0 +1,5 @@
+package org.fin.walley.view;
+
+import java.math.BigDecimal;
+
+public record CategoryTotalView(Long categoryId, String categoryName, BigDecimal total, Long count) {}
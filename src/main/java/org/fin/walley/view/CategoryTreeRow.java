@@ -0,0 +1,9 @@
+package org.fin.walley.view;
+
+import org.fin.walley.domain.TransactionType;
+
+/**
+ * One row of the category tree query: a category with one of its subcategories, or with nulls if it has none.
+ */
+public record CategoryTreeRow(Long categoryId, String categoryName, TransactionType type,
+                              Long subcategoryId, String subcategoryName) {}
@@ -0,0 +1,26 @@
+package org.fin.walley.view;
+
+import org.fin.walley.domain.TransactionType;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * All of a user's categories with their subcategories, keyed by type (every type present, possibly empty),
+ * categories and subcategories by name. {@code version} is the user's data version at the time of reading
+ * (same value as the ETag): a client holding the tree can revalidate it instead of fetching it again.
+ */
+public record CategoryTreeView(String version, Map<TransactionType, List<Node>> categories) {
+
+    public record Node(Long id, String name, List<SubcategoryView> subcategories) {}
+
+    public List<Node> of(TransactionType type) {
+        return categories.getOrDefault(type, List.of());
+    }
+
+    /** The category with {@code id} among those of {@code type}, or null. */
+    public Node find(TransactionType type, Long id) {
+        if (id == null) return null;
+        return of(type).stream().filter(n -> n.id().equals(id)).findFirst().orElse(null);
+    }
+}
@@ -0,0 +1,5 @@
+package org.fin.walley.view;
+
+import org.fin.walley.domain.TransactionType;
+
+public record CategoryView(Long id, String name, TransactionType type) {}
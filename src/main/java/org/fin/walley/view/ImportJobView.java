@@ -0,0 +1,33 @@
+package org.fin.walley.view;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Snapshot of an import job for the status endpoint. Throughput and ETA are null until the job has
+ * read something; {@code errors} holds at most the first few hundred row errors, {@code rowsFailed} counts all.
+ * {@code rowsSkipped}: rows left out in dedup mode because the user already had them.
+ */
+public record ImportJobView(
+        String id,
+        Kind kind,
+        boolean dedup,
+        State state,
+        long bytesTotal,
+        long bytesRead,
+        long rowsImported,
+        long rowsSkipped,
+        long rowsFailed,
+        List<String> errors,
+        Double rowsPerSecond,
+        Long etaSeconds,
+        String message,
+        Instant submittedAt,
+        Instant startedAt,
+        Instant finishedAt
+) {
+
+    public enum Kind { USER_CSV, USER_JSON, ADMIN_CSV, ADMIN_CSV_BULK, ADMIN_JSON }
+
+    public enum State { QUEUED, RUNNING, DONE, FAILED, CANCELLED }
+}
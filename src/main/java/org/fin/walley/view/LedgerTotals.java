@@ -0,0 +1,8 @@
+package org.fin.walley.view;
+
+import java.math.BigDecimal;
+
+public record LedgerTotals(BigDecimal income, BigDecimal expense) {
+
+    public static final LedgerTotals ZERO = new LedgerTotals(BigDecimal.ZERO, BigDecimal.ZERO);
+}
@@ -0,0 +1,23 @@
+package org.fin.walley.view;
+
+import org.fin.walley.domain.RecurrenceFrequency;
+import org.fin.walley.domain.TransactionType;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+public record RecurringView(
+        Long id,
+        TransactionType type,
+        BigDecimal amount,
+        Long categoryId,
+        String categoryName,
+        Long subcategoryId,
+        String subcategoryName,
+        String note,
+        RecurrenceFrequency frequency,
+        LocalDate startDate,
+        LocalDate endDate,
+        LocalDate nextDue,
+        boolean active
+) {}
@@ -0,0 +1,6 @@
+package org.fin.walley.view;
+
+import java.math.BigDecimal;
+
+// subcategoryId == null — транзакции без подкатегории
+public record SubcategoryTotalView(Long subcategoryId, String subcategoryName, BigDecimal total, Long count) {}
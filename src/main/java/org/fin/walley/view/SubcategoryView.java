@@ -0,0 +1,3 @@
+package org.fin.walley.view;
+
+public record SubcategoryView(Long id, String name) {}
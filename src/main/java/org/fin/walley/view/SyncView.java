@@ -0,0 +1,45 @@
+package org.fin.walley.view;
+
+import org.fin.walley.domain.TransactionType;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * One page of a delta sync. The client applies the page and sends {@code token} back as {@code since};
+ * while {@code hasMore} is true it asks again straight away. {@code reset}: the page belongs to a full
+ * snapshot, the client drops its local copy before applying the first such page.
+ * Categories and subcategories come on the first page only; {@code deleted} is always empty on a reset.
+ */
+public record SyncView(
+        String token,
+        boolean reset,
+        boolean hasMore,
+        List<CategoryChange> categories,
+        List<SubcategoryChange> subcategories,
+        List<TransactionChange> transactions,
+        List<Deletion> deleted
+) {
+
+    public record CategoryChange(Long id, TransactionType type, String name, long revision) {}
+
+    public record SubcategoryChange(Long id, Long categoryId, String name, long revision) {}
+
+    public record TransactionChange(
+            Long id,
+            TransactionType type,
+            BigDecimal amount,
+            LocalDate date,
+            Long categoryId,
+            Long subcategoryId,
+            String note,
+            long revision
+    ) {}
+
+    /**
+     * {@code entity} is {@code transaction}, {@code category} or {@code subcategory}. Deleting a category
+     * deletes its subcategories and transactions on the client as well.
+     */
+    public record Deletion(String entity, Long id, long revision) {}
+}
@@ -0,0 +1,35 @@
+package org.fin.walley.view;
+
+import org.fin.walley.domain.Transaction;
+import org.fin.walley.domain.TransactionType;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Flat read model of a transaction with its category/subcategory names resolved by the query itself,
+ * so list views never touch the lazy associations of {@link Transaction}.
+ */
+public record TransactionView(
+        Long id,
+        TransactionType type,
+        BigDecimal amount,
+        LocalDate date,
+        Long categoryId,
+        String categoryName,
+        Long subcategoryId,
+        String subcategoryName,
+        String note
+) {
+
+    /**
+     * For entities whose category/subcategory are already initialised (fetch join or just saved).
+     */
+    public static TransactionView of(Transaction t) {
+        Long catId = t.getCategory() != null ? t.getCategory().getId() : null;
+        String catName = t.getCategory() != null ? t.getCategory().getName() : null;
+        Long subId = t.getSubcategory() != null ? t.getSubcategory().getId() : null;
+        String subName = t.getSubcategory() != null ? t.getSubcategory().getName() : null;
+        return new TransactionView(t.getId(), t.getType(), t.getAmount(), t.getDate(), catId, catName, subId, subName, t.getNote());
+    }
+}
@@ -0,0 +1,5 @@
+package org.fin.walley.view;
+
+import org.fin.walley.domain.Role;
+
+public record UserView(Long id, String username, Role role, boolean enabled) {}
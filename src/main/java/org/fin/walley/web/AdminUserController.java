@@ -52,7 +52,7 @@ public class AdminUserController {
 
     @GetMapping
     public String list(Model model) {
-        model.addAttribute("users", userService.findAll());
+        model.addAttribute("users", userService.findAllViews());
         return "admin-users";
     }
 
@@ -2,6 +2,8 @@ package org.fin.walley.web;
 
 
 import jakarta.validation.Valid;
+import org.fin.walley.config.AppUserDetails;
+import org.fin.walley.config.CurrentUser;
 import org.fin.walley.domain.Category;
 import org.fin.walley.domain.TransactionType;
 import org.fin.walley.service.CategoryService;
@@ -11,7 +13,6 @@ import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.annotation.*;
 
 
-import java.security.Principal;
 
 
 @Controller
@@ -28,8 +29,8 @@ public class CategoryController {
 
 
     @GetMapping
-    public String list(Model model, Principal principal) {
-        model.addAttribute("categories", categoryService.listForUser(principal.getName()));
+    public String list(Model model, @CurrentUser AppUserDetails me) {
+        model.addAttribute("categories", categoryService.listViewsForUser(me.getId()));
         return "categories";
     }
 
@@ -47,20 +48,21 @@ public class CategoryController {
     @PostMapping
     public String create(@ModelAttribute("category") @Valid Category c,
                          BindingResult binding,
-                         Principal principal,
+                         @CurrentUser AppUserDetails me,
                          Model model) {
+        rejectDuplicateName(c, null, binding, me.getId());
         if (binding.hasErrors()) {
             model.addAttribute("types", TransactionType.values());
             return "category-form";
         }
-        categoryService.create(principal.getName(), c);
+        categoryService.create(me.getId(), c);
         return "redirect:/categories";
     }
 
 
     @GetMapping("/{id}/edit")
-    public String editForm(@PathVariable Long id, Model model, Principal principal) {
-        model.addAttribute("category", categoryService.findOwned(principal.getName(), id));
+    public String editForm(@PathVariable Long id, Model model, @CurrentUser AppUserDetails me) {
+        model.addAttribute("category", categoryService.findOwned(me.getId(), id));
         model.addAttribute("types", TransactionType.values());
         return "category-form";
     }
@@ -70,20 +72,29 @@ public class CategoryController {
     public String update(@PathVariable Long id,
                          @ModelAttribute("category") @Valid Category c,
                          BindingResult binding,
-                         Principal principal,
+                         @CurrentUser AppUserDetails me,
                          Model model) {
+        rejectDuplicateName(c, id, binding, me.getId());
         if (binding.hasErrors()) {
             model.addAttribute("types", TransactionType.values());
             return "category-form";
         }
-        categoryService.update(principal.getName(), id, c);
+        categoryService.update(me.getId(), id, c);
         return "redirect:/categories";
     }
 
 
     @PostMapping("/{id}/delete")
-    public String delete(@PathVariable Long id, Principal principal) {
-        categoryService.delete(principal.getName(), id);
+    public String delete(@PathVariable Long id, @CurrentUser AppUserDetails me) {
+        categoryService.delete(me.getId(), id);
         return "redirect:/categories";
     }
-}
\ No newline at end of file
+
+
+    private void rejectDuplicateName(Category c, Long id, BindingResult binding, Long userId) {
+        if (binding.hasFieldErrors("name") || c.getType() == null) return;
+        if (categoryService.nameTaken(userId, c.getType(), c.getName(), id)) {
+            binding.rejectValue("name", "duplicate", "A category with this name and type already exists");
+        }
+    }
+}
@@ -2,6 +2,8 @@ package org.fin.walley.web;
 
 
 import jakarta.validation.Valid;
+import org.fin.walley.config.AppUserDetails;
+import org.fin.walley.config.CurrentUser;
 import org.fin.walley.domain.Category;
 import org.fin.walley.domain.Subcategory;
 import org.fin.walley.service.SubcategoryService;
@@ -11,7 +13,6 @@ import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.annotation.*;
 
 
-import java.security.Principal;
 
 
 @Controller
@@ -28,18 +29,18 @@ public class SubcategoryController {
 
 
     @GetMapping
-    public String list(@PathVariable Long categoryId, Model model, Principal principal) {
-        String username = principal.getName();
-        Category cat = subService.findOwnedCategory(username, categoryId);
+    public String list(@PathVariable Long categoryId, Model model, @CurrentUser AppUserDetails me) {
+        Long userId = me.getId();
+        Category cat = subService.findOwnedCategory(userId, categoryId);
         model.addAttribute("category", cat);
-        model.addAttribute("subcategories", subService.listForCategory(username, categoryId));
+        model.addAttribute("subcategories", subService.listViewsForCategory(userId, categoryId));
         return "subcategories";
     }
 
 
     @GetMapping("/new")
-    public String createForm(@PathVariable Long categoryId, Model model, Principal principal) {
-        Category cat = subService.findOwnedCategory(principal.getName(), categoryId);
+    public String createForm(@PathVariable Long categoryId, Model model, @CurrentUser AppUserDetails me) {
+        Category cat = subService.findOwnedCategory(me.getId(), categoryId);
         model.addAttribute("category", cat);
         model.addAttribute("sub", new Subcategory());
         return "subcategory-form";
@@ -51,20 +52,21 @@ public class SubcategoryController {
                          @ModelAttribute("sub") @Valid Subcategory sub,
                          BindingResult binding,
                          Model model,
-                         Principal principal) {
+                         @CurrentUser AppUserDetails me) {
         if (binding.hasErrors()) {
-            model.addAttribute("category", subService.findOwnedCategory(principal.getName(), categoryId));
+            model.addAttribute("category", subService.findOwnedCategory(me.getId(), categoryId));
             return "subcategory-form";
         }
-        subService.create(principal.getName(), categoryId, sub);
+        subService.create(me.getId(), categoryId, sub);
         return "redirect:/categories/" + categoryId + "/subcategories";
     }
 
 
     @GetMapping("/{id}/edit")
-    public String editForm(@PathVariable Long categoryId, @PathVariable Long id, Model model, Principal principal) {
-        Category cat = subService.findOwnedCategory(principal.getName(), categoryId);
-        Subcategory sub = subService.findOwned(principal.getName(), id);
+    public String editForm(@PathVariable Long categoryId, @PathVariable Long id, Model model,
+                           @CurrentUser AppUserDetails me) {
+        Category cat = subService.findOwnedCategory(me.getId(), categoryId);
+        Subcategory sub = subService.findOwned(me.getId(), id);
         model.addAttribute("category", cat);
         model.addAttribute("sub", sub);
         return "subcategory-form";
@@ -77,19 +79,19 @@ public class SubcategoryController {
                          @ModelAttribute("sub") @Valid Subcategory sub,
                          BindingResult binding,
                          Model model,
-                         Principal principal) {
+                         @CurrentUser AppUserDetails me) {
         if (binding.hasErrors()) {
-            model.addAttribute("category", subService.findOwnedCategory(principal.getName(), categoryId));
+            model.addAttribute("category", subService.findOwnedCategory(me.getId(), categoryId));
             return "subcategory-form";
         }
-        subService.update(principal.getName(), id, sub);
+        subService.update(me.getId(), id, sub);
         return "redirect:/categories/" + categoryId + "/subcategories";
     }
 
 
     @PostMapping("/{id}/delete")
-    public String delete(@PathVariable Long categoryId, @PathVariable Long id, Principal principal) {
-        subService.delete(principal.getName(), id);
+    public String delete(@PathVariable Long categoryId, @PathVariable Long id, @CurrentUser AppUserDetails me) {
+        subService.delete(me.getId(), id);
         return "redirect:/categories/" + categoryId + "/subcategories";
     }
 }
\ No newline at end of file
@@ -4,24 +4,25 @@ import jakarta.validation.Valid;
 import jakarta.validation.constraints.DecimalMin;
 import jakarta.validation.constraints.NotNull;
 import jakarta.validation.constraints.Size;
-import org.fin.walley.domain.Category;
-import org.fin.walley.domain.Subcategory;
+import org.fin.walley.config.AppUserDetails;
+import org.fin.walley.config.CurrentUser;
 import org.fin.walley.domain.Transaction;
 import org.fin.walley.domain.TransactionType;
-import org.fin.walley.repo.CategoryRepository;
-import org.fin.walley.repo.SubcategoryRepository;
+import org.fin.walley.service.BudgetService;
+import org.fin.walley.service.CategoryService;
 import org.fin.walley.service.TransactionService;
+import org.fin.walley.view.CategoryTreeView;
 import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.support.RedirectAttributes;
+import tools.jackson.databind.ObjectMapper;
 
 import java.math.BigDecimal;
-import java.security.Principal;
 import java.time.LocalDate;
 import java.time.ZoneId;
-import java.util.Collections;
 import java.util.List;
 
 @Controller
@@ -29,15 +30,18 @@ import java.util.List;
 public class TransactionController {
 
     private final TransactionService txService;
-    private final CategoryRepository catRepo;
-    private final SubcategoryRepository subRepo;
+    private final CategoryService categoryService;
+    private final BudgetService budgetService;
+    private final ObjectMapper objectMapper;
 
     public TransactionController(TransactionService txService,
-                                 CategoryRepository catRepo,
-                                 SubcategoryRepository subRepo) {
+                                 CategoryService categoryService,
+                                 BudgetService budgetService,
+                                 ObjectMapper objectMapper) {
         this.txService = txService;
-        this.catRepo = catRepo;
-        this.subRepo = subRepo;
+        this.categoryService = categoryService;
+        this.budgetService = budgetService;
+        this.objectMapper = objectMapper;
     }
 
 
@@ -108,19 +112,23 @@ public class TransactionController {
 
 
     @GetMapping
-    public String list(Principal principal, Authentication auth, Model model) {
-        String username = principal.getName();
+    public String list(@RequestParam(required = false) String cursor,
+                       @CurrentUser AppUserDetails me, Authentication auth, Model model) {
+        Long userId = me.getId();
 
-        List<Transaction> tx = txService.listForUser(username);
+        TransactionService.TxPage page = txService.pageForUser(userId, cursor, TransactionService.DEFAULT_PAGE_SIZE);
 
         LocalDate today = LocalDate.now(ZoneId.of("Europe/Warsaw"));
-        TransactionService.Totals totals = txService.totalsForUserUpTo(username, today);
+        TransactionService.Totals totals = txService.totalsForUserUpTo(userId, today);
 
-        model.addAttribute("tx", tx);
+        model.addAttribute("tx", page.items());
+        model.addAttribute("nextCursor", page.nextCursor());
+        model.addAttribute("pagedFromStart", cursor == null || cursor.isBlank());
         model.addAttribute("asOf", today);
         model.addAttribute("incomeTotal", totals.income());
         model.addAttribute("expenseTotal", totals.expense());
         model.addAttribute("balance", totals.balance());
+        model.addAttribute("budgets", budgetService.statusForUser(userId));
         model.addAttribute("isAdmin", isAdmin(auth));
 
         return "transactions";
@@ -128,169 +136,95 @@ public class TransactionController {
 
 
     @GetMapping("/new")
-    public String createForm(Principal principal, Authentication auth, Model model) {
+    public String createForm(@CurrentUser AppUserDetails me, Authentication auth, Model model) {
         TransactionForm form = new TransactionForm();
         form.setType(TransactionType.EXPENSE);
         form.setDate(LocalDate.now(ZoneId.of("Europe/Warsaw")));
 
-
-        List<Category> categories = loadCategories(principal.getName(), form.getType());
-        boolean noCategories = categories.isEmpty();
-
-        if (!noCategories) {
-
-            form.setCategoryId(categories.get(0).getId());
+        CategoryTreeView tree = categoryService.treeForUser(me.getId());
+        List<CategoryTreeView.Node> categories = tree.of(form.getType());
+        if (!categories.isEmpty()) {
+            form.setCategoryId(categories.get(0).id());
         }
 
-        List<Subcategory> subs = (!noCategories && form.getCategoryId() != null)
-                ? loadSubcategories(principal.getName(), form.getCategoryId())
-                : Collections.emptyList();
-
         model.addAttribute("form", form);
-        model.addAttribute("types", TransactionType.values());
-        model.addAttribute("categories", categories);
-        model.addAttribute("subcategories", subs);
-        model.addAttribute("noCategories", noCategories);
-        model.addAttribute("isAdmin", isAdmin(auth));
-
-        return "transaction-form";
+        return formView(tree, form, null, auth, model);
     }
 
     @PostMapping
-    public String create(Principal principal,
+    public String create(@CurrentUser AppUserDetails me,
                          Authentication auth,
                          @ModelAttribute("form") @Valid TransactionForm form,
                          BindingResult binding,
-                         Model model) {
-
-        String username = principal.getName();
+                         Model model,
+                         RedirectAttributes redirect) {
 
-
-        List<Category> categories = loadCategories(username, form.getType());
-        boolean noCategories = categories.isEmpty();
-
-        if (noCategories) {
-            binding.reject("noCategories", "No categories found for selected type.");
-        }
+        Long userId = me.getId();
 
         if (binding.hasErrors()) {
-            List<Subcategory> subs = (form.getCategoryId() != null)
-                    ? loadSubcategories(username, form.getCategoryId())
-                    : Collections.emptyList();
-
-            model.addAttribute("types", TransactionType.values());
-            model.addAttribute("categories", categories);
-            model.addAttribute("subcategories", subs);
-            model.addAttribute("noCategories", noCategories);
-            model.addAttribute("isAdmin", isAdmin(auth));
-            return "transaction-form";
+            return formView(categoryService.treeForUser(userId), form, binding, auth, model);
         }
 
         try {
-            txService.create(username, form.toEntity(), form.getCategoryId(), form.getSubcategoryId());
+            txService.create(userId, form.toEntity(), form.getCategoryId(), form.getSubcategoryId());
+            redirect.addFlashAttribute("budgetAlerts", budgetService.alertsForCategory(userId, form.getCategoryId()));
             return "redirect:/transactions";
         } catch (IllegalArgumentException ex) {
             binding.reject("business", ex.getMessage());
-
-            List<Subcategory> subs = (form.getCategoryId() != null)
-                    ? loadSubcategories(username, form.getCategoryId())
-                    : Collections.emptyList();
-
-            model.addAttribute("types", TransactionType.values());
-            model.addAttribute("categories", categories);
-            model.addAttribute("subcategories", subs);
-            model.addAttribute("noCategories", noCategories);
-            model.addAttribute("isAdmin", isAdmin(auth));
-            return "transaction-form";
+            return formView(categoryService.treeForUser(userId), form, binding, auth, model);
         }
     }
 
 
 
     @GetMapping("/{id}/edit")
-    public String editForm(@PathVariable Long id, Principal principal, Authentication auth, Model model) {
-        String username = principal.getName();
+    public String editForm(@PathVariable Long id, @CurrentUser AppUserDetails me, Authentication auth, Model model) {
+        Long userId = me.getId();
 
-        Transaction tx = txService.findOwned(username, id);
+        Transaction tx = txService.findOwned(userId, id);
         TransactionForm form = TransactionForm.fromEntity(tx);
 
-        List<Category> categories = loadCategories(username, form.getType());
-        boolean noCategories = categories.isEmpty();
-
-
-        if (!noCategories && form.getCategoryId() == null) {
-            form.setCategoryId(categories.get(0).getId());
+        CategoryTreeView tree = categoryService.treeForUser(userId);
+        List<CategoryTreeView.Node> categories = tree.of(form.getType());
+        if (!categories.isEmpty() && form.getCategoryId() == null) {
+            form.setCategoryId(categories.get(0).id());
         }
 
-        List<Subcategory> subs = (form.getCategoryId() != null)
-                ? loadSubcategories(username, form.getCategoryId())
-                : Collections.emptyList();
-
         model.addAttribute("form", form);
-        model.addAttribute("types", TransactionType.values());
-        model.addAttribute("categories", categories);
-        model.addAttribute("subcategories", subs);
-        model.addAttribute("noCategories", noCategories);
-        model.addAttribute("isAdmin", isAdmin(auth));
-
-        return "transaction-form";
+        return formView(tree, form, null, auth, model);
     }
 
     @PostMapping("/{id}")
     public String update(@PathVariable Long id,
-                         Principal principal,
+                         @CurrentUser AppUserDetails me,
                          Authentication auth,
                          @ModelAttribute("form") @Valid TransactionForm form,
                          BindingResult binding,
-                         Model model) {
+                         Model model,
+                         RedirectAttributes redirect) {
 
-        String username = principal.getName();
+        Long userId = me.getId();
         form.setId(id);
 
-        List<Category> categories = loadCategories(username, form.getType());
-        boolean noCategories = categories.isEmpty();
-
-        if (noCategories) {
-            binding.reject("noCategories", "No categories found for selected type.");
-        }
-
         if (binding.hasErrors()) {
-            List<Subcategory> subs = (form.getCategoryId() != null)
-                    ? loadSubcategories(username, form.getCategoryId())
-                    : Collections.emptyList();
-
-            model.addAttribute("types", TransactionType.values());
-            model.addAttribute("categories", categories);
-            model.addAttribute("subcategories", subs);
-            model.addAttribute("noCategories", noCategories);
-            model.addAttribute("isAdmin", isAdmin(auth));
-            return "transaction-form";
+            return formView(categoryService.treeForUser(userId), form, binding, auth, model);
         }
 
         try {
-            txService.update(username, id, form.toEntity(), form.getCategoryId(), form.getSubcategoryId());
+            txService.update(userId, id, form.toEntity(), form.getCategoryId(), form.getSubcategoryId());
+            redirect.addFlashAttribute("budgetAlerts", budgetService.alertsForCategory(userId, form.getCategoryId()));
             return "redirect:/transactions";
         } catch (IllegalArgumentException ex) {
             binding.reject("business", ex.getMessage());
-
-            List<Subcategory> subs = (form.getCategoryId() != null)
-                    ? loadSubcategories(username, form.getCategoryId())
-                    : Collections.emptyList();
-
-            model.addAttribute("types", TransactionType.values());
-            model.addAttribute("categories", categories);
-            model.addAttribute("subcategories", subs);
-            model.addAttribute("noCategories", noCategories);
-            model.addAttribute("isAdmin", isAdmin(auth));
-            return "transaction-form";
+            return formView(categoryService.treeForUser(userId), form, binding, auth, model);
         }
     }
 
 
 
     @PostMapping("/{id}/delete")
-    public String delete(@PathVariable Long id, Principal principal) {
-        txService.delete(principal.getName(), id);
+    public String delete(@PathVariable Long id, @CurrentUser AppUserDetails me) {
+        txService.delete(me.getId(), id);
         return "redirect:/transactions";
     }
 
@@ -301,13 +235,27 @@ public class TransactionController {
     }
 
 
-    private List<Category> loadCategories(String username, TransactionType type) {
-
-        return catRepo.findByUserUsernameAndTypeOrderByNameAsc(username, type);
-    }
+    /**
+     * Renders the form from one category tree: the selects for the current type and category, plus the whole
+     * tree as JSON so switching type or category in the browser needs no requests. The tree is only loaded
+     * when the form is actually rendered, not on a successful save.
+     */
+    private String formView(CategoryTreeView tree, TransactionForm form, BindingResult binding,
+                            Authentication auth, Model model) {
+        List<CategoryTreeView.Node> categories = form.getType() != null ? tree.of(form.getType()) : List.of();
+        boolean noCategories = categories.isEmpty();
+        if (noCategories && binding != null) {
+            binding.reject("noCategories", "No categories found for selected type.");
+        }
 
-    private List<Subcategory> loadSubcategories(String username, Long categoryId) {
+        CategoryTreeView.Node selected = form.getType() != null ? tree.find(form.getType(), form.getCategoryId()) : null;
 
-        return subRepo.findByCategoryIdAndCategoryUserUsernameOrderByNameAsc(categoryId, username);
+        model.addAttribute("types", TransactionType.values());
+        model.addAttribute("categories", categories);
+        model.addAttribute("subcategories", selected != null ? selected.subcategories() : List.of());
+        model.addAttribute("noCategories", noCategories);
+        model.addAttribute("categoryTree", objectMapper.writeValueAsString(tree));
+        model.addAttribute("isAdmin", isAdmin(auth));
+        return "transaction-form";
     }
 }
@@ -0,0 +1,378 @@
+-- Исходная схема: таблицы сущностей (раньше их создавал hibernate ddl-auto=update) и всё, что было в schema.sql.
+-- Идемпотентна: на базе, созданной до миграций, Flyway ставит baseline 0 и эта миграция лишь догоняет то,
+-- чего там ещё нет (таблицы уже существуют, заполнения и слияния ничего не находят).
+-- Новые изменения схемы — только следующими V<n>__*.sql; этот файл больше не меняется.
+
+
+-- ---------- Таблицы сущностей ----------
+-- Типы колонок те же, что выводит Hibernate: при старте ddl-auto=validate сверяет их с сущностями.
+
+CREATE SEQUENCE IF NOT EXISTS app_user_seq START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE IF NOT EXISTS category_seq START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE IF NOT EXISTS subcategory_seq START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE IF NOT EXISTS tx_seq START WITH 1 INCREMENT BY 50;
+
+CREATE TABLE IF NOT EXISTS app_user (
+    id            bigint       NOT NULL PRIMARY KEY,
+    username      varchar(255) NOT NULL,
+    password_hash varchar(255) NOT NULL,
+    role          varchar(255) NOT NULL CHECK (role IN ('USER', 'ADMIN')),
+    enabled       boolean      NOT NULL,
+    CONSTRAINT uk_user_username UNIQUE (username)
+);
+
+CREATE TABLE IF NOT EXISTS category (
+    id      bigint       NOT NULL PRIMARY KEY,
+    name    varchar(255) NOT NULL,
+    type    varchar(255) NOT NULL CHECK (type IN ('INCOME', 'EXPENSE')),
+    user_id bigint       NOT NULL REFERENCES app_user (id)
+);
+
+CREATE TABLE IF NOT EXISTS subcategory (
+    id          bigint       NOT NULL PRIMARY KEY,
+    name        varchar(255) NOT NULL,
+    category_id bigint       NOT NULL REFERENCES category (id),
+    CONSTRAINT uk_subcategory_category_name UNIQUE (category_id, name)
+);
+
+CREATE TABLE IF NOT EXISTS tx (
+    id             bigint         NOT NULL PRIMARY KEY,
+    type           varchar(255)   NOT NULL CHECK (type IN ('INCOME', 'EXPENSE')),
+    amount         numeric(14, 2) NOT NULL,
+    date           date           NOT NULL,
+    category_id    bigint REFERENCES category (id),
+    subcategory_id bigint REFERENCES subcategory (id),
+    note           varchar(255),
+    user_id        bigint         NOT NULL REFERENCES app_user (id)
+);
+
+CREATE TABLE IF NOT EXISTS daily_balance (
+    id      bigint GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    user_id bigint         NOT NULL REFERENCES app_user (id),
+    date    date           NOT NULL,
+    income  numeric(16, 2) NOT NULL,
+    expense numeric(16, 2) NOT NULL,
+    CONSTRAINT uk_daily_balance_user_date UNIQUE (user_id, date)
+);
+
+CREATE TABLE IF NOT EXISTS monthly_category_total (
+    id             bigint GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    user_id        bigint         NOT NULL REFERENCES app_user (id),
+    month          date           NOT NULL,
+    type           varchar(255)   NOT NULL CHECK (type IN ('INCOME', 'EXPENSE')),
+    category_id    bigint         NOT NULL REFERENCES category (id),
+    subcategory_id bigint REFERENCES subcategory (id),
+    total          numeric(16, 2) NOT NULL,
+    tx_count       bigint         NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS budget (
+    id             bigint GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    user_id        bigint         NOT NULL REFERENCES app_user (id),
+    category_id    bigint         NOT NULL REFERENCES category (id),
+    subcategory_id bigint REFERENCES subcategory (id),
+    period         varchar(255)   NOT NULL CHECK (period IN ('WEEK', 'MONTH')),
+    limit_amount   numeric(14, 2) NOT NULL,
+    alert_percent  integer        NOT NULL,
+    tracked_from   date           NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS budget_counter (
+    id           bigint GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    budget_id    bigint         NOT NULL REFERENCES budget (id),
+    period_start date           NOT NULL,
+    spent        numeric(16, 2) NOT NULL,
+    CONSTRAINT uk_budget_counter_budget_period UNIQUE (budget_id, period_start)
+);
+
+CREATE TABLE IF NOT EXISTS recurring_tx (
+    id             bigint GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    user_id        bigint         NOT NULL REFERENCES app_user (id),
+    type           varchar(255)   NOT NULL CHECK (type IN ('INCOME', 'EXPENSE')),
+    amount         numeric(14, 2) NOT NULL,
+    category_id    bigint         NOT NULL REFERENCES category (id),
+    subcategory_id bigint REFERENCES subcategory (id),
+    note           varchar(255),
+    frequency      varchar(255)   NOT NULL CHECK (frequency IN ('WEEKLY', 'MONTHLY')),
+    start_date     date           NOT NULL,
+    end_date       date,
+    occurrences    integer        NOT NULL,
+    next_due       date           NOT NULL,
+    active         boolean        NOT NULL
+);
+
+
+-- ---------- Последовательности id ----------
+-- Таблицы, созданные до перехода с IDENTITY на SEQUENCE, уже содержат id: двигаем последовательность за max(id).
+-- Hibernate (pooled, шаг 50) выдаёт id из (value - 49 .. value], поэтому хватает last_value >= max(id).
+
+SELECT setval('app_user_seq', (SELECT max(id) FROM app_user))
+WHERE (SELECT max(id) FROM app_user) > (SELECT last_value FROM app_user_seq);
+
+SELECT setval('category_seq', (SELECT max(id) FROM category))
+WHERE (SELECT max(id) FROM category) > (SELECT last_value FROM category_seq);
+
+SELECT setval('subcategory_seq', (SELECT max(id) FROM subcategory))
+WHERE (SELECT max(id) FROM subcategory) > (SELECT last_value FROM subcategory_seq);
+
+SELECT setval('tx_seq', (SELECT max(id) FROM tx))
+WHERE (SELECT max(id) FROM tx) > (SELECT last_value FROM tx_seq);
+
+
+-- ---------- Full-text search по tx.note ----------
+
+CREATE EXTENSION IF NOT EXISTS btree_gin;
+
+ALTER TABLE tx ADD COLUMN IF NOT EXISTS note_tsv tsvector
+    GENERATED ALWAYS AS (to_tsvector('simple', coalesce(note, ''))) STORED;
+
+-- (user_id, note_tsv): поиск всегда в пределах одного пользователя
+CREATE INDEX IF NOT EXISTS ix_tx_user_note_tsv ON tx USING gin (user_id, note_tsv);
+
+
+-- ---------- Отпечаток строки tx для дедупликации импорта ----------
+-- Хеш нормализованных (user_id, type, amount, date, category_id, subcategory_id, note): первые 8 байт SHA-256.
+-- Та же формула в Java: ImportDeduplicator.fingerprint — менять только вместе.
+-- Функция объявлена IMMUTABLE: формат даты задан явно, регистр note не трогаем, так что от настроек сессии не зависит.
+
+CREATE OR REPLACE FUNCTION tx_fingerprint(user_id bigint, type text, amount numeric, date date,
+                                          category_id bigint, subcategory_id bigint, note text)
+    RETURNS bigint
+    LANGUAGE sql IMMUTABLE PARALLEL SAFE
+AS $$
+SELECT ('x' || substr(encode(sha256(convert_to(concat_ws('|',
+        user_id::text,
+        type,
+        amount::text,
+        to_char(date, 'YYYY-MM-DD'),
+        coalesce(category_id::text, ''),
+        coalesce(subcategory_id::text, ''),
+        coalesce(btrim(regexp_replace(note, '[ \t\r\n]+', ' ', 'g'), ' '), '')), 'UTF8')), 'hex'), 1, 16))::bit(64)::bigint
+$$;
+
+-- вычисляется при любой записи в tx (JPA, нативные INSERT, COPY-импорт); в сущности не отображается
+ALTER TABLE tx ADD COLUMN IF NOT EXISTS fingerprint bigint
+    GENERATED ALWAYS AS (tx_fingerprint(user_id, type, amount, date, category_id, subcategory_id, note)) STORED;
+
+-- импорт читает отпечатки пользователя index-only сканом
+CREATE INDEX IF NOT EXISTS ix_tx_user_fingerprint ON tx (user_id, fingerprint);
+
+
+-- ---------- daily_balance: первичное заполнение из tx ----------
+-- Дальше таблицу ведёт LedgerService; здесь заполняем её только если она ещё пустая.
+
+INSERT INTO daily_balance (user_id, date, income, expense)
+SELECT t.user_id,
+       t.date,
+       sum(CASE WHEN t.type = 'INCOME' THEN t.amount ELSE 0 END),
+       sum(CASE WHEN t.type = 'EXPENSE' THEN t.amount ELSE 0 END)
+FROM tx t
+WHERE NOT EXISTS (SELECT 1 FROM daily_balance)
+GROUP BY t.user_id, t.date;
+
+
+-- ---------- monthly_category_total ----------
+
+CREATE UNIQUE INDEX IF NOT EXISTS uk_monthly_category_total
+    ON monthly_category_total (user_id, month, type, category_id, (coalesce(subcategory_id, 0)));
+
+INSERT INTO monthly_category_total (user_id, month, type, category_id, subcategory_id, total, tx_count)
+SELECT t.user_id,
+       date_trunc('month', t.date)::date,
+       t.type,
+       t.category_id,
+       t.subcategory_id,
+       sum(t.amount),
+       count(*)
+FROM tx t
+WHERE t.category_id IS NOT NULL
+  AND NOT EXISTS (SELECT 1 FROM monthly_category_total)
+GROUP BY t.user_id, date_trunc('month', t.date), t.type, t.category_id, t.subcategory_id;
+
+
+-- ---------- recurring_tx ----------
+-- Планировщик ищет активные шаблоны со сроком <= сегодня, пачками по id.
+
+CREATE INDEX IF NOT EXISTS ix_recurring_tx_due
+    ON recurring_tx (next_due, id)
+    WHERE active;
+
+
+-- ---------- Синхронизация клиентов: ревизии и надгробия ----------
+-- Каждая транзакция БД, меняющая данные пользователя, получает следующую ревизию из user_sync (строка
+-- блокируется до коммита, поэтому ревизии одного пользователя становятся видны в порядке возрастания).
+-- Ревизию проставляют триггеры, так что её получает любой путь записи: JPA, нативные UPDATE/DELETE, COPY.
+-- Удаления оставляют надгробия.
+
+CREATE TABLE IF NOT EXISTS user_sync (
+    user_id      bigint PRIMARY KEY REFERENCES app_user (id) ON DELETE CASCADE,
+    revision     bigint NOT NULL DEFAULT 0,
+    -- надгробия с ревизией <= min_revision удалены: клиенту с более старым токеном нужна полная синхронизация
+    min_revision bigint NOT NULL DEFAULT 0
+);
+
+CREATE TABLE IF NOT EXISTS sync_tombstone (
+    id         bigserial PRIMARY KEY,
+    user_id    bigint      NOT NULL REFERENCES app_user (id) ON DELETE CASCADE,
+    entity     text        NOT NULL,
+    entity_id  bigint      NOT NULL,
+    revision   bigint      NOT NULL,
+    created_at timestamptz NOT NULL DEFAULT now()
+);
+
+CREATE INDEX IF NOT EXISTS ix_sync_tombstone_user_revision ON sync_tombstone (user_id, revision, id);
+CREATE INDEX IF NOT EXISTS ix_sync_tombstone_created_at ON sync_tombstone (created_at);
+
+ALTER TABLE tx ADD COLUMN IF NOT EXISTS revision bigint NOT NULL DEFAULT 0;
+ALTER TABLE category ADD COLUMN IF NOT EXISTS revision bigint NOT NULL DEFAULT 0;
+ALTER TABLE subcategory ADD COLUMN IF NOT EXISTS revision bigint NOT NULL DEFAULT 0;
+
+CREATE INDEX IF NOT EXISTS ix_tx_user_revision ON tx (user_id, revision, id);
+CREATE INDEX IF NOT EXISTS ix_category_user_revision ON category (user_id, revision);
+
+-- одна ревизия на транзакцию БД и пользователя: запоминается в настройке, локальной для транзакции
+CREATE OR REPLACE FUNCTION sync_revision(p_user_id bigint) RETURNS bigint
+    LANGUAGE plpgsql
+AS $$
+DECLARE
+    key text := 'walley.sync_rev_' || p_user_id;
+    rev text;
+BEGIN
+    IF p_user_id IS NULL THEN
+        RETURN NULL;
+    END IF;
+    rev := nullif(current_setting(key, true), '');
+    IF rev IS NULL THEN
+        INSERT INTO user_sync AS s (user_id, revision) VALUES (p_user_id, 1)
+        ON CONFLICT (user_id) DO UPDATE SET revision = s.revision + 1
+        RETURNING s.revision::text INTO rev;
+        PERFORM set_config(key, rev, true);
+    END IF;
+    RETURN rev::bigint;
+END
+$$;
+
+CREATE OR REPLACE FUNCTION sync_stamp_owned() RETURNS trigger
+    LANGUAGE plpgsql
+AS $$
+BEGIN
+    NEW.revision := sync_revision(NEW.user_id);
+    RETURN NEW;
+END
+$$;
+
+CREATE OR REPLACE FUNCTION sync_stamp_subcategory() RETURNS trigger
+    LANGUAGE plpgsql
+AS $$
+BEGIN
+    NEW.revision := coalesce(sync_revision((SELECT c.user_id FROM category c WHERE c.id = NEW.category_id)), 0);
+    RETURN NEW;
+END
+$$;
+
+CREATE OR REPLACE FUNCTION sync_tombstone_owned() RETURNS trigger
+    LANGUAGE plpgsql
+AS $$
+BEGIN
+    INSERT INTO sync_tombstone (user_id, entity, entity_id, revision)
+    VALUES (OLD.user_id, TG_ARGV[0], OLD.id, sync_revision(OLD.user_id));
+    RETURN NULL;
+END
+$$;
+
+-- категория уже удалена (каскад) — надгробие подкатегории не нужно, клиент удалит её вместе с категорией
+CREATE OR REPLACE FUNCTION sync_tombstone_subcategory() RETURNS trigger
+    LANGUAGE plpgsql
+AS $$
+BEGIN
+    INSERT INTO sync_tombstone (user_id, entity, entity_id, revision)
+    SELECT c.user_id, 'subcategory', OLD.id, sync_revision(c.user_id)
+    FROM category c
+    WHERE c.id = OLD.category_id;
+    RETURN NULL;
+END
+$$;
+
+DROP TRIGGER IF EXISTS tx_sync_stamp ON tx;
+CREATE TRIGGER tx_sync_stamp BEFORE INSERT OR UPDATE ON tx
+    FOR EACH ROW EXECUTE FUNCTION sync_stamp_owned();
+DROP TRIGGER IF EXISTS tx_sync_tombstone ON tx;
+CREATE TRIGGER tx_sync_tombstone AFTER DELETE ON tx
+    FOR EACH ROW EXECUTE FUNCTION sync_tombstone_owned('transaction');
+
+DROP TRIGGER IF EXISTS category_sync_stamp ON category;
+CREATE TRIGGER category_sync_stamp BEFORE INSERT OR UPDATE ON category
+    FOR EACH ROW EXECUTE FUNCTION sync_stamp_owned();
+DROP TRIGGER IF EXISTS category_sync_tombstone ON category;
+CREATE TRIGGER category_sync_tombstone AFTER DELETE ON category
+    FOR EACH ROW EXECUTE FUNCTION sync_tombstone_owned('category');
+
+DROP TRIGGER IF EXISTS subcategory_sync_stamp ON subcategory;
+CREATE TRIGGER subcategory_sync_stamp BEFORE INSERT OR UPDATE ON subcategory
+    FOR EACH ROW EXECUTE FUNCTION sync_stamp_subcategory();
+DROP TRIGGER IF EXISTS subcategory_sync_tombstone ON subcategory;
+CREATE TRIGGER subcategory_sync_tombstone AFTER DELETE ON subcategory
+    FOR EACH ROW EXECUTE FUNCTION sync_tombstone_subcategory();
+
+
+-- ---------- Уникальность категорий (user_id, type, name) ----------
+-- Раньше параллельные импорты могли создать дубликаты. Перед созданием ключа сливаем их в категорию
+-- с наименьшим id (подкатегории с одинаковым именем — тоже), затем пересчитываем агрегаты по этим категориям.
+-- На чистой базе все операторы ниже ничего не делают. Идёт после первичного заполнения агрегатов.
+
+CREATE TEMP TABLE IF NOT EXISTS category_merge (old_id bigint PRIMARY KEY, new_id bigint NOT NULL);
+TRUNCATE category_merge;
+INSERT INTO category_merge (old_id, new_id)
+SELECT c.id, c.keep_id
+FROM (SELECT id, min(id) OVER (PARTITION BY user_id, type, name) AS keep_id FROM category) c
+WHERE c.id <> c.keep_id;
+
+CREATE TEMP TABLE IF NOT EXISTS subcategory_merge (old_id bigint PRIMARY KEY, new_id bigint NOT NULL);
+TRUNCATE subcategory_merge;
+INSERT INTO subcategory_merge (old_id, new_id)
+SELECT s.id, min(k.id)
+FROM subcategory s
+JOIN category_merge m ON m.old_id = s.category_id
+JOIN subcategory k ON k.category_id = m.new_id AND k.name = s.name
+GROUP BY s.id;
+
+DELETE FROM monthly_category_total
+WHERE category_id IN (SELECT old_id FROM category_merge UNION SELECT new_id FROM category_merge);
+
+DELETE FROM budget_counter
+WHERE budget_id IN (SELECT b.id FROM budget b
+                    WHERE b.category_id IN (SELECT old_id FROM category_merge UNION SELECT new_id FROM category_merge));
+
+UPDATE tx SET subcategory_id = m.new_id FROM subcategory_merge m WHERE tx.subcategory_id = m.old_id;
+UPDATE budget SET subcategory_id = m.new_id FROM subcategory_merge m WHERE budget.subcategory_id = m.old_id;
+UPDATE recurring_tx SET subcategory_id = m.new_id FROM subcategory_merge m WHERE recurring_tx.subcategory_id = m.old_id;
+DELETE FROM subcategory WHERE id IN (SELECT old_id FROM subcategory_merge);
+
+UPDATE subcategory SET category_id = m.new_id FROM category_merge m WHERE subcategory.category_id = m.old_id;
+UPDATE tx SET category_id = m.new_id FROM category_merge m WHERE tx.category_id = m.old_id;
+UPDATE budget SET category_id = m.new_id FROM category_merge m WHERE budget.category_id = m.old_id;
+UPDATE recurring_tx SET category_id = m.new_id FROM category_merge m WHERE recurring_tx.category_id = m.old_id;
+DELETE FROM category WHERE id IN (SELECT old_id FROM category_merge);
+
+INSERT INTO monthly_category_total (user_id, month, type, category_id, subcategory_id, total, tx_count)
+SELECT t.user_id, date_trunc('month', t.date)::date, t.type, t.category_id, t.subcategory_id, sum(t.amount), count(*)
+FROM tx t
+WHERE t.category_id IN (SELECT new_id FROM category_merge)
+GROUP BY t.user_id, date_trunc('month', t.date), t.type, t.category_id, t.subcategory_id;
+
+INSERT INTO budget_counter (budget_id, period_start, spent)
+SELECT b.id,
+       date_trunc(CASE WHEN b.period = 'WEEK' THEN 'week' ELSE 'month' END, t.date::timestamp)::date,
+       sum(t.amount)
+FROM budget b
+JOIN tx t ON t.category_id = b.category_id
+         AND (b.subcategory_id IS NULL OR t.subcategory_id = b.subcategory_id)
+         AND t.date >= b.tracked_from
+         AND t.type = 'EXPENSE'
+WHERE b.category_id IN (SELECT new_id FROM category_merge)
+GROUP BY 1, 2;
+
+DROP TABLE category_merge;
+DROP TABLE subcategory_merge;
+
+CREATE UNIQUE INDEX IF NOT EXISTS uk_category_user_type_name ON category (user_id, type, name);
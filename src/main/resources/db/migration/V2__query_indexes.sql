@@ -0,0 +1,41 @@
+-- Индексы под запросы репозиториев. Все списки фильтруют по user_id (см. AppUserDetails), поэтому он ведущий.
+-- Проверка планов: QueryPlanTest (./gradlew queryPlans).
+
+
+-- ---------- tx ----------
+
+-- keyset-страницы TransactionRepository.findFirstPage/findPageAfter: where user_id order by date desc, id desc limit n
+-- читаются первые n записей индекса без сортировки; он же обслуживает внешний ключ tx.user_id
+CREATE INDEX IF NOT EXISTS ix_tx_user_date_id ON tx (user_id, date DESC, id DESC);
+
+-- clearCategory/deleteAllForCategory и проверки внешнего ключа при удалении категории
+CREATE INDEX IF NOT EXISTS ix_tx_category ON tx (category_id);
+
+-- clearSubcategory; у большинства строк подкатегории нет — их в индекс не берём
+CREATE INDEX IF NOT EXISTS ix_tx_subcategory ON tx (subcategory_id) WHERE subcategory_id IS NOT NULL;
+
+
+-- ---------- category / subcategory ----------
+-- (user_id, type, name) — уже uk_category_user_type_name: findViewsByUserIdAndType, findByUserIdAndTypeAndName.
+-- (category_id, name) — uk_subcategory_category_name: findViewsByCategory, дерево категорий.
+
+
+-- ---------- агрегаты ----------
+
+-- subcategoryBreakdown (user_id, category_id, диапазон month), удаление и свёртка агрегатов категории
+CREATE INDEX IF NOT EXISTS ix_monthly_category_total_category
+    ON monthly_category_total (category_id, month);
+
+-- LedgerService.detachSubcategory
+CREATE INDEX IF NOT EXISTS ix_monthly_category_total_subcategory
+    ON monthly_category_total (subcategory_id)
+    WHERE subcategory_id IS NOT NULL;
+
+
+-- ---------- budget / recurring_tx ----------
+
+-- BudgetRepository.findStatus: все бюджеты пользователя
+CREATE INDEX IF NOT EXISTS ix_budget_user ON budget (user_id);
+
+-- RecurringTransactionRepository.findViewsByUserId: order by next_due, id
+CREATE INDEX IF NOT EXISTS ix_recurring_tx_user_due ON recurring_tx (user_id, next_due, id);
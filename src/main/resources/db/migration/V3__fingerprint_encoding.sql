@@ -0,0 +1,21 @@
+-- tx_fingerprint (V1) объявлена IMMUTABLE, хотя convert_to и to_char сами лишь STABLE.
+-- to_char: зависит от настроек сессии только через шаблоны TM*/локали; 'YYYY-MM-DD' от них не зависит.
+-- convert_to: в общем случае результат зависит от кодировки базы и каталога преобразований (CREATE CONVERSION).
+-- Но в базе UTF8 преобразование в 'UTF8' — простое копирование байтов, каталог не используется, а кодировка
+-- задаётся при создании базы и потом не меняется. Тогда отпечаток зависит только от аргументов, как того требуют
+-- генерируемый столбец tx.fingerprint и индекс ix_tx_user_fingerprint.
+-- Поэтому база обязана быть в UTF8 — проверяем здесь, а не полагаемся на умолчание initdb.
+-- Совпадение с ImportDeduplicator.fingerprint проверяет FingerprintConsistencyTest.
+
+DO $$
+BEGIN
+    IF current_setting('server_encoding') <> 'UTF8' THEN
+        RAISE EXCEPTION 'walley needs a UTF8 database (tx_fingerprint relies on it), this one is %',
+            current_setting('server_encoding');
+    END IF;
+END
+$$;
+
+COMMENT ON FUNCTION tx_fingerprint(bigint, text, numeric, date, bigint, bigint, text) IS
+    'IMMUTABLE although convert_to is STABLE: the database is UTF8 (checked by V3), so converting to UTF8 copies '
+    'the bytes and the result depends on the arguments only. Must match ImportDeduplicator.fingerprint.';
@@ -0,0 +1,57 @@
+-- Итог журнала daily_balance по пользователю за всё время: общий баланс — одна строка, баланс на дату —
+-- итог минус дни после неё (DailyBalanceRepository.totalsUpTo). Даты запросов почти всегда недавние,
+-- поэтому читается горстка строк, а не весь журнал пользователя (по строке на каждый активный день).
+-- Ведётся триггером на daily_balance, так что итог получает любой путь записи в журнал.
+
+CREATE TABLE IF NOT EXISTS user_balance (
+    user_id bigint PRIMARY KEY REFERENCES app_user (id) ON DELETE CASCADE,
+    income  numeric(18, 2) NOT NULL,
+    expense numeric(18, 2) NOT NULL
+);
+
+INSERT INTO user_balance (user_id, income, expense)
+SELECT d.user_id, sum(d.income), sum(d.expense)
+FROM daily_balance d
+GROUP BY d.user_id
+ON CONFLICT (user_id) DO NOTHING;
+
+CREATE OR REPLACE FUNCTION user_balance_apply() RETURNS trigger
+    LANGUAGE plpgsql
+AS $$
+DECLARE
+    -- то, что строка журнала уже внесла в итог NEW.user_id
+    old_income  numeric := 0;
+    old_expense numeric := 0;
+BEGIN
+    IF TG_OP = 'DELETE' THEN
+        UPDATE user_balance
+           SET income = income - OLD.income,
+               expense = expense - OLD.expense
+         WHERE user_id = OLD.user_id;
+        RETURN NULL;
+    END IF;
+
+    IF TG_OP = 'UPDATE' THEN
+        IF OLD.user_id = NEW.user_id THEN
+            old_income := OLD.income;
+            old_expense := OLD.expense;
+        ELSE
+            UPDATE user_balance
+               SET income = income - OLD.income,
+                   expense = expense - OLD.expense
+             WHERE user_id = OLD.user_id;
+        END IF;
+    END IF;
+
+    INSERT INTO user_balance AS b (user_id, income, expense)
+    VALUES (NEW.user_id, NEW.income - old_income, NEW.expense - old_expense)
+    ON CONFLICT (user_id) DO UPDATE
+        SET income = b.income + excluded.income,
+            expense = b.expense + excluded.expense;
+    RETURN NULL;
+END
+$$;
+
+DROP TRIGGER IF EXISTS daily_balance_user_total ON daily_balance;
+CREATE TRIGGER daily_balance_user_total AFTER INSERT OR UPDATE OR DELETE ON daily_balance
+    FOR EACH ROW EXECUTE FUNCTION user_balance_apply();
@@ -0,0 +1,104 @@
+package org.fin.walley.api;
+
+import org.fin.walley.config.AppUserDetails;
+import org.fin.walley.domain.AppUser;
+import org.fin.walley.domain.Role;
+import org.fin.walley.domain.TransactionType;
+import org.fin.walley.service.CategoryService;
+import org.fin.walley.service.DataVersionService;
+import org.fin.walley.service.SubcategoryService;
+import org.fin.walley.view.CategoryView;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Conditional GETs of the category list: a matching {@code If-None-Match} is answered with 304 before the
+ * service is asked, and a write of the user invalidates the tag.
+ */
+class CategoryApiControllerTest {
+
+    private static final Long USER = 5L;
+
+    private final CategoryService categories = mock(CategoryService.class);
+    private final DataVersionService versions = new DataVersionService();
+    private final CategoryApiController controller =
+            new CategoryApiController(categories, mock(SubcategoryService.class), versions);
+    private final AppUserDetails me = new AppUserDetails(AppUser.builder()
+            .id(USER).username("ann").passwordHash("x").role(Role.USER).enabled(true).build());
+
+    @Test
+    void fullResponseCarriesTheTag() {
+        when(categories.listViewsForUserByType(USER, TransactionType.EXPENSE))
+                .thenReturn(List.of(new CategoryView(1L, "Food", TransactionType.EXPENSE)));
+
+        ResponseEntity<List<CategoryApiController.CategoryDto>> response = get(null);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(versions.etag(USER), response.getHeaders().getETag());
+        assertEquals("no-cache, private", response.getHeaders().getCacheControl());
+        assertEquals(List.of(new CategoryApiController.CategoryDto(1L, "Food")), response.getBody());
+    }
+
+    @Test
+    void matchingTagIsNotModifiedWithoutQuerying() {
+        ResponseEntity<List<CategoryApiController.CategoryDto>> response = get(versions.etag(USER));
+
+        assertEquals(HttpStatus.NOT_MODIFIED, response.getStatusCode());
+        assertEquals(versions.etag(USER), response.getHeaders().getETag());
+        assertNull(response.getBody());
+        verify(categories, never()).listViewsForUserByType(USER, TransactionType.EXPENSE);
+    }
+
+    @Test
+    void writeOfTheUserInvalidatesTheTag() {
+        String old = versions.etag(USER);
+        versions.changed(USER);
+
+        ResponseEntity<List<CategoryApiController.CategoryDto>> response = get(old);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertNotNull(response.getHeaders().getETag());
+        verify(categories, times(1)).listViewsForUserByType(USER, TransactionType.EXPENSE);
+    }
+
+    @Test
+    void writeOfAnotherUserKeepsTheTag() {
+        String tag = versions.etag(USER);
+        versions.changed(USER + 1);
+
+        assertEquals(HttpStatus.NOT_MODIFIED, get(tag).getStatusCode());
+    }
+
+    @Test
+    void tagOfAnotherUserIsNotAnswered() {
+        // тот же браузер, другой вход: счётчики обоих пользователей нулевые
+        ResponseEntity<List<CategoryApiController.CategoryDto>> response = get(versions.etag(USER + 1));
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(versions.etag(USER), response.getHeaders().getETag());
+        verify(categories, times(1)).listViewsForUserByType(USER, TransactionType.EXPENSE);
+    }
+
+    private ResponseEntity<List<CategoryApiController.CategoryDto>> get(String ifNoneMatch) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/categories");
+        if (ifNoneMatch != null) request.addHeader(HttpHeaders.IF_NONE_MATCH, ifNoneMatch);
+        return controller.categories(TransactionType.EXPENSE, me,
+                new ServletWebRequest(request, new MockHttpServletResponse()));
+    }
+}
@@ -0,0 +1,91 @@
+package org.fin.walley.repo;
+
+import org.fin.walley.view.LedgerTotals;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Totals read from user_balance (kept by the trigger on daily_balance, V4__user_balance.sql) must equal
+ * the sums over the daily rows they replace. Rolled back afterwards.
+ */
+@SpringBootTest(properties = "spring.jpa.show-sql=false")
+@Transactional
+class DailyBalanceRepositoryTest {
+
+    private static final LocalDate DAY = LocalDate.of(2024, 5, 10);
+
+    @Autowired
+    private DailyBalanceRepository balances;
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    private Long userId;
+
+    @BeforeEach
+    void seed() {
+        userId = jdbc.queryForObject("""
+                insert into app_user (id, username, password_hash, role, enabled)
+                values (nextval('app_user_seq'), 'ledger-' || clock_timestamp(), 'x', 'USER', true)
+                returning id
+                """, Long.class);
+    }
+
+    @Test
+    void noLedgerMeansNoTotals() {
+        assertTrue(balances.totals(userId).isEmpty());
+        assertTrue(balances.totalsUpTo(userId, DAY).isEmpty());
+    }
+
+    @Test
+    void totalsFollowEveryChangeOfTheDailyRows() {
+        balances.addDelta(userId, DAY.minusDays(3), new BigDecimal("100.00"), new BigDecimal("5.25"));
+        balances.addDelta(userId, DAY, BigDecimal.ZERO, new BigDecimal("40.00"));
+        balances.addDelta(userId, DAY.plusDays(2), new BigDecimal("7.50"), BigDecimal.ZERO);
+        // тот же день ещё раз (ветка ON CONFLICT) и отмена части суммы
+        balances.addDelta(userId, DAY, new BigDecimal("1.00"), new BigDecimal("-10.00"));
+
+        assertMatchesDailyRows();
+        assertTotals("101", "35.25", balances.totalsUpTo(userId, DAY).orElseThrow(), "as of " + DAY);
+        assertTotals("100", "5.25", balances.totalsUpTo(userId, DAY.minusDays(1)).orElseThrow(), "day before");
+
+        jdbc.update("delete from daily_balance d where d.user_id = ? and d.date = ?", userId, DAY.plusDays(2));
+        assertMatchesDailyRows();
+
+        balances.deleteAllForUser(userId);
+        assertTotals("0", "0", balances.totals(userId).orElseThrow(), "after delete");
+    }
+
+    private void assertMatchesDailyRows() {
+        for (LocalDate asOf : new LocalDate[]{DAY.minusDays(10), DAY.minusDays(3), DAY, DAY.plusDays(5)}) {
+            LedgerTotals expected = jdbc.queryForObject("""
+                    select coalesce(sum(d.income), 0), coalesce(sum(d.expense), 0)
+                    from daily_balance d
+                    where d.user_id = ? and d.date <= ?
+                    """, (rs, n) -> new LedgerTotals(rs.getBigDecimal(1), rs.getBigDecimal(2)), userId, asOf);
+            assertTotals(expected, balances.totalsUpTo(userId, asOf).orElseThrow(), "as of " + asOf);
+        }
+        assertTotals(balances.totalsUpTo(userId, DAY.plusYears(10)).orElseThrow(),
+                balances.totals(userId).orElseThrow(), "all time");
+    }
+
+    private static void assertTotals(String income, String expense, LedgerTotals actual, String what) {
+        assertTotals(new LedgerTotals(new BigDecimal(income), new BigDecimal(expense)), actual, what);
+    }
+
+    // сравнение без учёта масштаба: 0 и 0.00 — одна сумма
+    private static void assertTotals(LedgerTotals expected, LedgerTotals actual, String what) {
+        assertEquals(0, expected.income().compareTo(actual.income()), "income " + what + ": " + actual);
+        assertEquals(0, expected.expense().compareTo(actual.expense()), "expense " + what + ": " + actual);
+    }
+}
@@ -0,0 +1,236 @@
+package org.fin.walley.repo;
+
+import org.fin.walley.domain.AppUser;
+import org.fin.walley.domain.Role;
+import org.fin.walley.service.ImportProgress;
+import org.fin.walley.service.TransactionImportService;
+import org.fin.walley.service.UserService;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * EXPLAIN of the hot repository queries on a seeded database: each must be served by an index. The SQL is
+ * written by hand to the shape of the query it is named after (same tables, joins, predicates and ordering,
+ * select lists trimmed); when a repository query changes, change its string here too. Plans are taken with
+ * {@code enable_seqscan = off}, so a sequential scan that is still chosen means no index fits the predicate,
+ * whatever the table size. Keyset pages must not sort either.
+ * Not part of {@code test}; run with {@code ./gradlew queryPlans} against the local PostgreSQL
+ * from application.properties (optionally {@code -Dplan.rows=N} rows per user).
+ */
+@Tag("queryplan")
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+@SpringBootTest(properties = "spring.jpa.show-sql=false")
+class QueryPlanTest {
+
+    private static final int USERS = 10;
+    private static final int ROWS = Integer.getInteger("plan.rows", 5_000);
+    private static final LocalDate FIRST_DAY = LocalDate.of(2020, 1, 1);
+
+    @Autowired
+    private TransactionImportService importService;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    @Autowired
+    private TransactionTemplate tx;
+
+    private final List<AppUser> users = new ArrayList<>();
+    private Long userId;
+    private Long categoryId;
+    private Long subcategoryId;
+    private Long txId;
+
+    @BeforeAll
+    void seed() {
+        String prefix = "plan-" + System.nanoTime() + "-";
+        StringBuilder csv = new StringBuilder(USERS * ROWS * 64)
+                .append("username,type,amount,date,category,subcategory,note\n");
+        for (int u = 0; u < USERS; u++) {
+            AppUser user = userService.createByAdmin(prefix + u, "plan", Role.USER, true);
+            users.add(user);
+            for (int i = 0; i < ROWS; i++) {
+                csv.append(user.getUsername()).append(',')
+                        .append(i % 10 == 0 ? "INCOME" : "EXPENSE").append(',')
+                        .append(10 + i % 990).append(".50,")
+                        .append(FIRST_DAY.plusDays(i % 1500)).append(',')
+                        .append("Category ").append(i % 12).append(',')
+                        .append(i % 3 == 0 ? "" : "Sub " + i % 5).append(',')
+                        .append("plan row ").append(i).append('\n');
+            }
+        }
+        importService.importAdminCsvBulk(new ByteArrayInputStream(csv.toString().getBytes(StandardCharsets.UTF_8)),
+                ImportProgress.FAIL_FAST);
+        jdbc.execute("analyze");
+
+        userId = users.getFirst().getId();
+        categoryId = jdbc.queryForObject(
+                "select min(c.id) from category c where c.user_id = ? and c.type = 'EXPENSE'", Long.class, userId);
+        subcategoryId = jdbc.queryForObject(
+                "select min(s.id) from subcategory s where s.category_id = ?", Long.class, categoryId);
+        txId = jdbc.queryForObject("select max(t.id) from tx t where t.user_id = ?", Long.class, userId);
+    }
+
+    @AfterAll
+    void deleteUsers() {
+        users.forEach(u -> userService.delete(u.getId()));
+    }
+
+    Stream<Arguments> queries() {
+        LocalDate mid = FIRST_DAY.plusDays(750);
+        return Stream.of(
+                keyset("TransactionRepository.findFirstPage", """
+                        select t.id, t.type, t.amount, t.date, c.id, c.name, s.id, s.name, t.note
+                        from tx t
+                        left join category c on c.id = t.category_id
+                        left join subcategory s on s.id = t.subcategory_id
+                        where t.user_id = ?
+                        order by t.date desc, t.id desc
+                        fetch first ? rows only
+                        """, userId, 51),
+                keyset("TransactionRepository.findPageAfter", """
+                        select t.id, t.type, t.amount, t.date, c.id, c.name, s.id, s.name, t.note
+                        from tx t
+                        left join category c on c.id = t.category_id
+                        left join subcategory s on s.id = t.subcategory_id
+                        where t.user_id = ? and (t.date < ? or (t.date = ? and t.id < ?))
+                        order by t.date desc, t.id desc
+                        fetch first ? rows only
+                        """, userId, mid, mid, Long.MAX_VALUE, 51),
+                query("TransactionRepository.findByIdAndUserId",
+                        "select t.* from tx t where t.id = ? and t.user_id = ?", txId, userId),
+                query("TransactionRepository.searchNoteIds", """
+                        select t.id
+                        from tx t
+                        where t.user_id = ? and t.note_tsv @@ to_tsquery('simple', ?)
+                        order by ts_rank(t.note_tsv, to_tsquery('simple', ?)) desc, t.date desc, t.id desc
+                        limit ? offset ?
+                        """, userId, "plan:* & row:*", "plan:* & row:*", 51, 0),
+                query("TransactionRepository.deleteAllForCategory",
+                        "delete from tx t where t.user_id = ? and t.category_id = ?", userId, categoryId),
+                query("TransactionRepository.clearSubcategory",
+                        "update tx t set subcategory_id = null where t.user_id = ? and t.subcategory_id = ?",
+                        userId, subcategoryId),
+                // проверки внешних ключей при удалении категории/подкатегории
+                query("FK tx.category_id", "select 1 from tx t where t.category_id = ?", categoryId),
+                query("FK tx.subcategory_id", "select 1 from tx t where t.subcategory_id = ?", subcategoryId),
+                query("SyncRepository.transactions", """
+                        select t.id
+                        from tx t
+                        where t.user_id = ? and t.revision > ? and t.revision <= ? and (t.revision, t.id) > (?, ?)
+                        order by t.revision, t.id
+                        limit ?
+                        """, userId, 0L, Long.MAX_VALUE, 0L, 0L, 1000),
+                query("CategoryRepository.findViewsByUserIdAndType", """
+                        select c.id, c.name, c.type
+                        from category c
+                        where c.user_id = ? and c.type = ?
+                        order by c.name
+                        """, userId, "EXPENSE"),
+                query("CategoryRepository.findByIdAndUserId",
+                        "select c.* from category c where c.id = ? and c.user_id = ?", categoryId, userId),
+                query("CategoryRepository.findTreeRowsByUserId", """
+                        select c.id, c.name, c.type, s.id, s.name
+                        from category c
+                        left join subcategory s on s.category_id = c.id
+                        where c.user_id = ?
+                        order by c.type, c.name, c.id, s.name
+                        """, userId),
+                query("SubcategoryRepository.findViewsByCategory", """
+                        select s.id, s.name
+                        from subcategory s
+                        join category c on c.id = s.category_id
+                        where s.category_id = ? and c.user_id = ?
+                        order by s.name
+                        """, categoryId, userId),
+                query("SubcategoryRepository.findByIdAndCategoryUserId", """
+                        select s.*
+                        from subcategory s
+                        join category c on c.id = s.category_id
+                        where s.id = ? and c.user_id = ?
+                        """, subcategoryId, userId),
+                query("DailyBalanceRepository.totalsUpTo", """
+                        select b.income - coalesce(sum(d.income), 0), b.expense - coalesce(sum(d.expense), 0)
+                        from user_balance b
+                        left join daily_balance d on d.user_id = b.user_id and d.date > ?
+                        where b.user_id = ?
+                        group by b.user_id, b.income, b.expense
+                        """, mid, userId),
+                query("MonthlyCategoryTotalRepository.topCategories", """
+                        select c.id, c.name, sum(m.total), sum(m.tx_count)
+                        from monthly_category_total m
+                        join category c on c.id = m.category_id
+                        where m.user_id = ? and m.type = ? and m.month between ? and ?
+                        group by c.id, c.name
+                        """, userId, "EXPENSE", FIRST_DAY, mid),
+                query("MonthlyCategoryTotalRepository.subcategoryBreakdown", """
+                        select s.id, s.name, sum(m.total), sum(m.tx_count)
+                        from monthly_category_total m
+                        left join subcategory s on s.id = m.subcategory_id
+                        where m.user_id = ? and m.category_id = ? and m.month between ? and ?
+                        group by s.id, s.name
+                        """, userId, categoryId, FIRST_DAY, mid),
+                query("MonthlyCategoryTotalRepository.deleteAllForCategory",
+                        "delete from monthly_category_total m where m.category_id = ?", categoryId),
+                // только выборка бюджетов пользователя, без join категорий и счётчиков периода
+                query("BudgetRepository.findStatus",
+                        "select b.id from budget b where b.user_id = ?", userId),
+                query("RecurringTransactionRepository.findViewsByUserId", """
+                        select r.id
+                        from recurring_tx r
+                        where r.user_id = ?
+                        order by r.next_due, r.id
+                        """, userId)
+        );
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("queries")
+    void servedByIndex(String name, String sql, boolean keyset, Object[] args) {
+        List<String> plan = explain(sql, args);
+        // план попадает в вывод только в сообщении упавшей проверки
+        String text = String.join("\n", plan);
+
+        assertFalse(text.contains("Seq Scan"), name + " falls back to a sequential scan:\n" + text);
+        if (keyset) {
+            assertFalse(text.contains("Sort"), name + " sorts instead of reading the index in order:\n" + text);
+        }
+    }
+
+    // EXPLAIN без ANALYZE: DML не выполняется
+    private List<String> explain(String sql, Object[] args) {
+        return tx.execute(status -> {
+            jdbc.execute("set local enable_seqscan = off");
+            return jdbc.queryForList("explain " + sql, String.class, args);
+        });
+    }
+
+    private static Arguments query(String name, String sql, Object... args) {
+        return Arguments.of(name, sql, false, args);
+    }
+
+    private static Arguments keyset(String name, String sql, Object... args) {
+        return Arguments.of(name, sql, true, args);
+    }
+}
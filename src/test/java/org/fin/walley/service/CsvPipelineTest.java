@@ -0,0 +1,145 @@
+package org.fin.walley.service;
+
+import com.opencsv.CSVReader;
+import org.fin.walley.service.ImportExportService.Parsed;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * {@link CsvPipeline}: rows and row errors reach the caller in file order whatever order the blocks are
+ * parsed in, and each carries the physical line its record starts on.
+ */
+class CsvPipelineTest {
+
+    private record Row(int n, String note) {}
+
+    private final ForkJoinPool pool = new ForkJoinPool(4);
+
+    @AfterEach
+    void shutdown() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    void rowsAndErrorsKeepFileOrderAndStartLines() throws Exception {
+        String csv = """
+                n,note
+                1,ok
+                2,"two
+                lines"
+                x,unparseable
+
+                4,reject
+                5,ok
+                """;
+        List<String> events = new ArrayList<>();
+
+        run(csv, r -> "reject".equals(r.note()) ? "rejected" : null, collect(events), p ->
+                events.add(p.line() + ":" + p.row().n()));
+
+        assertEquals(List.of(
+                "2:1",
+                "3:2",
+                "failed 5: Invalid CSV format at line 5: For input string: \"x\"",
+                "failed 7: Row 7: rejected",
+                "8:5"
+        ), events);
+    }
+
+    @Test
+    void blocksParsedOutOfOrderAreHandedOnInOrder() throws Exception {
+        int rows = CsvPipeline.BLOCK_SIZE * 4 + 3;
+        StringBuilder csv = new StringBuilder("n,note\n");
+        IntStream.range(0, rows).forEach(i -> csv.append(i).append(",row ").append(i).append('\n'));
+        List<Parsed<Row>> seen = new ArrayList<>();
+
+        // первый блок разбирается дольше остальных
+        Function<String[], Row> slowFirstBlock = f -> {
+            Row r = parse(f);
+            if (r.n() == 0) sleep(200);
+            return r;
+        };
+        new CsvPipeline<>(pool, pool.getParallelism(), 2, slowFirstBlock, r -> null)
+                .run(reader(csv.toString()), ImportProgress.FAIL_FAST, seen::add);
+
+        assertEquals(rows, seen.size());
+        for (int i = 0; i < rows; i++) {
+            assertEquals(i, seen.get(i).row().n());
+            assertEquals(i + 2, seen.get(i).line());
+        }
+    }
+
+    @Test
+    void failFastStopsAtTheFirstBadRow() {
+        String csv = """
+                n,note
+                1,ok
+                oops,bad
+                3,ok
+                """;
+        List<Integer> seen = new ArrayList<>();
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () ->
+                run(csv, r -> null, ImportProgress.FAIL_FAST, p -> seen.add(p.row().n())));
+
+        assertEquals("Invalid CSV format at line 3: For input string: \"oops\"", e.getMessage());
+        assertEquals(List.of(1), seen);
+    }
+
+    @Test
+    void sinkFailureStopsTheReader() {
+        int rows = CsvPipeline.BLOCK_SIZE * 50;
+        StringBuilder csv = new StringBuilder("n,note\n");
+        IntStream.range(0, rows).forEach(i -> csv.append(i).append(",row\n"));
+
+        IllegalStateException e = assertThrows(IllegalStateException.class, () ->
+                run(csv.toString(), r -> null, ImportProgress.FAIL_FAST, p -> {
+                    if (p.row().n() == 10) throw new IllegalStateException("writer failed");
+                }));
+        assertEquals("writer failed", e.getMessage());
+    }
+
+    private void run(String csv, Function<Row, String> check, ImportProgress progress,
+                     Consumer<Parsed<Row>> sink) throws Exception {
+        new CsvPipeline<>(pool, pool.getParallelism(), 2, CsvPipelineTest::parse, check)
+                .run(reader(csv), progress, sink);
+    }
+
+    private static CSVReader reader(String csv) throws Exception {
+        CSVReader reader = new CSVReader(new StringReader(csv));
+        reader.readNext();
+        return reader;
+    }
+
+    private static Row parse(String[] f) {
+        return new Row(Integer.parseInt(f[0].trim()), f[1]);
+    }
+
+    private static ImportProgress collect(List<String> events) {
+        return new ImportProgress() {
+            @Override
+            public void rowFailed(long line, String message) {
+                events.add("failed " + line + ": " + message);
+            }
+        };
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
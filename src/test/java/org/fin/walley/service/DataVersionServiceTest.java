@@ -0,0 +1,91 @@
+package org.fin.walley.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionSynchronizationUtils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+/**
+ * Per-user tags of {@link DataVersionService}, and that inside a transaction they move only on commit.
+ */
+class DataVersionServiceTest {
+
+    private final DataVersionService versions = new DataVersionService();
+
+    @AfterEach
+    void clearSynchronization() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void changeMovesOnlyThatUsersTag() {
+        String ann = versions.etag(1L);
+        String bob = versions.etag(2L);
+        assertEquals(ann, versions.etag(1L));
+
+        versions.changed(1L);
+
+        assertNotEquals(ann, versions.etag(1L));
+        assertEquals(bob, versions.etag(2L));
+    }
+
+    @Test
+    void usersNeverShareATag() {
+        assertNotEquals(versions.etag(1L), versions.etag(2L));
+
+        // счётчики сравнялись — теги всё равно разные
+        versions.changed(1L);
+        versions.changed(2L);
+        versions.changedAll();
+        assertNotEquals(versions.etag(1L), versions.etag(2L));
+    }
+
+    @Test
+    void changedAllMovesEveryTag() {
+        String ann = versions.etag(1L);
+        String nobody = versions.etag(99L);
+
+        versions.changedAll();
+
+        assertNotEquals(ann, versions.etag(1L));
+        assertNotEquals(nobody, versions.etag(99L));
+    }
+
+    @Test
+    void tagIsQuotedAndStable() {
+        String tag = versions.etag(1L);
+        assertEquals('"', tag.charAt(0));
+        assertEquals('"', tag.charAt(tag.length() - 1));
+        assertEquals(tag, versions.etag(1L));
+    }
+
+    @Test
+    void insideATransactionTheTagMovesAfterCommit() {
+        String before = versions.etag(1L);
+        TransactionSynchronizationManager.initSynchronization();
+
+        versions.changed(1L);
+        versions.changedAll();
+        assertEquals(before, versions.etag(1L), "uncommitted change must not show in the tag");
+
+        TransactionSynchronizationUtils.triggerAfterCommit();
+        assertNotEquals(before, versions.etag(1L));
+    }
+
+    @Test
+    void rolledBackChangeKeepsTheTag() {
+        String before = versions.etag(1L);
+        TransactionSynchronizationManager.initSynchronization();
+
+        versions.changed(1L);
+        // откат: afterCommit не вызывается
+        TransactionSynchronizationManager.clearSynchronization();
+
+        assertEquals(before, versions.etag(1L));
+    }
+}
@@ -0,0 +1,84 @@
+package org.fin.walley.service;
+
+import org.fin.walley.domain.TransactionType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * The generated column {@code tx.fingerprint} (SQL function {@code tx_fingerprint}) and
+ * {@link ImportDeduplicator#fingerprint} must agree on every row, or dedup silently stops matching.
+ * Rows are inserted as they are given (unnormalised amount scale, raw note) and rolled back afterwards.
+ */
+@SpringBootTest(properties = "spring.jpa.show-sql=false")
+@Transactional
+class FingerprintConsistencyTest {
+
+    private static final LocalDate DATE = LocalDate.of(2024, 2, 29);
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    private Long userId;
+    private Long categoryId;
+    private Long subcategoryId;
+
+    @BeforeEach
+    void seed() {
+        userId = jdbc.queryForObject("""
+                insert into app_user (id, username, password_hash, role, enabled)
+                values (nextval('app_user_seq'), 'fp-' || clock_timestamp(), 'x', 'USER', true)
+                returning id
+                """, Long.class);
+        categoryId = jdbc.queryForObject("""
+                insert into category (id, name, type, user_id)
+                values (nextval('category_seq'), 'Food', 'EXPENSE', ?)
+                returning id
+                """, Long.class, userId);
+        subcategoryId = jdbc.queryForObject("""
+                insert into subcategory (id, name, category_id)
+                values (nextval('subcategory_seq'), 'Lunch', ?)
+                returning id
+                """, Long.class, categoryId);
+    }
+
+    static Stream<Arguments> rows() {
+        return Stream.of(
+                Arguments.of("no subcategory, null note", TransactionType.EXPENSE, "10.5", false, null),
+                Arguments.of("empty note", TransactionType.EXPENSE, "10.50", true, ""),
+                Arguments.of("blank note", TransactionType.INCOME, "10.50", true, " \t\r\n "),
+                Arguments.of("scale 0", TransactionType.EXPENSE, "3", true, "x"),
+                Arguments.of("scale 2", TransactionType.EXPENSE, "1234567.89", false, "x"),
+                Arguments.of("whitespace runs", TransactionType.EXPENSE, "7.10", true, "  coffee \t and\r\n  croissant  "),
+                Arguments.of("non-ASCII", TransactionType.EXPENSE, "7.10", true, "Кофе  и круассан, naïve café ☕"),
+                Arguments.of("separator in note", TransactionType.INCOME, "0.01", false, "a|b||c"),
+                // не-ASCII пробелы не схлопываются ни там, ни там
+                Arguments.of("no-break space", TransactionType.EXPENSE, "1", true, "\u00a0x\u00a0 y")
+        );
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("rows")
+    void columnMatchesJava(String name, TransactionType type, String amount, boolean withSubcategory, String note) {
+        Long subId = withSubcategory ? subcategoryId : null;
+        Long stored = jdbc.queryForObject("""
+                insert into tx (id, type, amount, date, category_id, subcategory_id, note, user_id)
+                values (nextval('tx_seq'), ?, ?, ?, ?, ?, ?, ?)
+                returning fingerprint
+                """, Long.class, type.name(), new BigDecimal(amount), DATE, categoryId, subId, note, userId);
+
+        assertEquals(ImportDeduplicator.fingerprint(userId, type, new BigDecimal(amount), DATE, categoryId, subId, note),
+                stored, name);
+    }
+}
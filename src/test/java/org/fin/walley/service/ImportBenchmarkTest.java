@@ -0,0 +1,103 @@
+package org.fin.walley.service;
+
+import org.fin.walley.domain.AppUser;
+import org.fin.walley.domain.Role;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Import throughput in rows/s. Not part of {@code test}; run with {@code ./gradlew benchmark}
+ * (optionally {@code -Pbench.rows=100000}) against the local PostgreSQL from application.properties.
+ * Run it on two commits to compare.
+ */
+@Tag("benchmark")
+@SpringBootTest(properties = "spring.jpa.show-sql=false")
+class ImportBenchmarkTest {
+
+    private static final int ROWS = Integer.getInteger("bench.rows", 20_000);
+
+    @Autowired
+    private TransactionImportService importService;
+
+    @Autowired
+    private UserService userService;
+
+    private AppUser user;
+
+    @BeforeEach
+    void createUser() {
+        user = userService.createByAdmin("bench-" + System.nanoTime(), "bench", Role.USER, true);
+    }
+
+    @AfterEach
+    void deleteUser() {
+        userService.delete(user.getId());
+    }
+
+    @Test
+    void userCsvImport() {
+        long started = System.nanoTime();
+        int imported = importService.importUserCsv(user.getUsername(), csv(false), false, ImportProgress.FAIL_FAST);
+        report("user CSV import", imported, started);
+        assertEquals(ROWS, imported);
+    }
+
+    // второй проход находит все строки в памяти (отпечатки из tx.fingerprint) и ничего не пишет
+    @Test
+    void userCsvReimportWithDedup() {
+        importService.importUserCsv(user.getUsername(), csv(false), false, ImportProgress.FAIL_FAST);
+
+        long started = System.nanoTime();
+        int imported = importService.importUserCsv(user.getUsername(), csv(false), true, ImportProgress.FAIL_FAST);
+        report("user CSV re-import, dedup", ROWS, started);
+        assertEquals(0, imported);
+    }
+
+    @Test
+    void adminCsvImport() {
+        long started = System.nanoTime();
+        int imported = importService.importAdminCsv(csv(true), false, ImportProgress.FAIL_FAST);
+        report("admin CSV import", imported, started);
+        assertEquals(ROWS, imported);
+    }
+
+    @Test
+    void adminCsvBulkImport() {
+        long started = System.nanoTime();
+        int imported = importService.importAdminCsvBulk(csv(true), ImportProgress.FAIL_FAST);
+        report("admin CSV bulk (COPY) import", imported, started);
+        assertEquals(ROWS, imported);
+    }
+
+    private InputStream csv(boolean withUsername) {
+        StringBuilder sb = new StringBuilder(ROWS * 64);
+        sb.append(withUsername ? "username," : "").append("type,amount,date,category,subcategory,note\n");
+        LocalDate day = LocalDate.of(2020, 1, 1);
+        for (int i = 0; i < ROWS; i++) {
+            if (withUsername) sb.append(user.getUsername()).append(',');
+            sb.append(i % 10 == 0 ? "INCOME" : "EXPENSE").append(',')
+                    .append(10 + i % 990).append(".50,")
+                    .append(day.plusDays(i % 1500)).append(',')
+                    .append("Category ").append(i % 12).append(',')
+                    .append(i % 3 == 0 ? "" : "Sub " + i % 5).append(',')
+                    .append("bench row ").append(i).append('\n');
+        }
+        return new ByteArrayInputStream(sb.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void report(String what, int rows, long startedNanos) {
+        double seconds = (System.nanoTime() - startedNanos) / 1e9;
+        System.out.printf("%s: %d rows in %.2f s = %.0f rows/s%n", what, rows, seconds, rows / seconds);
+    }
+}
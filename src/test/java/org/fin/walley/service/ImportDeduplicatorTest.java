@@ -0,0 +1,77 @@
+package org.fin.walley.service;
+
+import org.fin.walley.domain.TransactionType;
+import org.fin.walley.repo.ImportLookupRepository;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Normalisation and multiset matching of {@link ImportDeduplicator}; the stored fingerprints are mocked
+ * (agreement with the SQL side: {@link FingerprintConsistencyTest}).
+ */
+class ImportDeduplicatorTest {
+
+    private static final Long USER = 7L;
+    private static final LocalDate DATE = LocalDate.of(2024, 3, 1);
+
+    private final ImportLookupRepository lookups = mock(ImportLookupRepository.class);
+
+    @Test
+    void normalisesAmountScaleAndNoteWhitespace() {
+        assertEquals(fp("10.5", "lunch"), fp("10.50", "lunch"));
+        assertEquals(fp("10", "  lunch \t at\r\nwork "), fp("10.00", "lunch at work"));
+        assertEquals(fp("1", null), fp("1", ""));
+        assertEquals(fp("1", null), fp("1", " \n "));
+    }
+
+    @Test
+    void distinguishesEveryField() {
+        long base = fp("10.50", "lunch");
+        assertNotEquals(base, fp("10.51", "lunch"));
+        assertNotEquals(base, fp("10.50", "Lunch"));
+        assertNotEquals(base, ImportDeduplicator.fingerprint(USER, TransactionType.INCOME, new BigDecimal("10.50"),
+                DATE, 1L, null, "lunch"));
+        assertNotEquals(base, ImportDeduplicator.fingerprint(USER, TransactionType.EXPENSE, new BigDecimal("10.50"),
+                DATE.plusDays(1), 1L, null, "lunch"));
+        assertNotEquals(base, ImportDeduplicator.fingerprint(USER, TransactionType.EXPENSE, new BigDecimal("10.50"),
+                DATE, 1L, 2L, "lunch"));
+        assertNotEquals(base, ImportDeduplicator.fingerprint(USER + 1, TransactionType.EXPENSE, new BigDecimal("10.50"),
+                DATE, 1L, null, "lunch"));
+    }
+
+    @Test
+    void storedRowsAreMatchedAsAMultiset() {
+        Map<Long, Integer> stored = new HashMap<>(Map.of(fp("10.50", "lunch"), 2));
+        when(lookups.fingerprintCounts(USER)).thenReturn(stored);
+        ImportDeduplicator dedup = new ImportDeduplicator(lookups);
+
+        // в базе две такие строки: две из файла пропускаются, третья — новая
+        assertTrue(isDuplicate(dedup, "10.5", "lunch"));
+        assertTrue(isDuplicate(dedup, "10.50", " lunch "));
+        assertFalse(isDuplicate(dedup, "10.50", "lunch"));
+        assertFalse(isDuplicate(dedup, "11", "lunch"));
+        // отпечатки пользователя читаются один раз на импорт
+        verify(lookups, times(1)).fingerprintCounts(USER);
+    }
+
+    private static boolean isDuplicate(ImportDeduplicator dedup, String amount, String note) {
+        return dedup.isDuplicate(USER, TransactionType.EXPENSE, new BigDecimal(amount), DATE, 1L, null, note);
+    }
+
+    private static long fp(String amount, String note) {
+        return ImportDeduplicator.fingerprint(USER, TransactionType.EXPENSE, new BigDecimal(amount), DATE, 1L, null, note);
+    }
+}
@@ -0,0 +1,237 @@
+package org.fin.walley.service;
+
+import org.fin.walley.view.ImportJobView;
+import org.fin.walley.view.ImportJobView.Kind;
+import org.fin.walley.view.ImportJobView.State;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.task.TaskExecutor;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.Stream;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Queueing behaviour of {@link ImportJobService} with the import itself mocked: per-user chaining,
+ * the per-user cap, executor rejection and cancellation.
+ */
+class ImportJobServiceTest {
+
+    @TempDir
+    Path spool;
+
+    private final TransactionImportService importService = mock(TransactionImportService.class);
+    private final ExecutorService pool = Executors.newFixedThreadPool(2);
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @AfterEach
+    void shutdown() {
+        release.countDown();
+        pool.shutdownNow();
+    }
+
+    @Test
+    void jobsOfOneUserRunOneAfterAnother() throws Exception {
+        CountDownLatch started = blockImports();
+        ImportJobService jobs = service(pool::execute, 3);
+
+        ImportJobView first = jobs.submit("ann", Kind.USER_CSV, false, csv());
+        ImportJobView second = jobs.submit("ann", Kind.USER_CSV, false, csv());
+        assertTrue(started.await(5, SECONDS));
+
+        // второй поток пула свободен, но задача ждёт первую задачу того же пользователя
+        assertEquals(State.RUNNING, jobs.status("ann", first.id()).state());
+        assertEquals(State.QUEUED, jobs.status("ann", second.id()).state());
+
+        release.countDown();
+        assertEquals(State.DONE, awaitFinished(jobs, "ann", first.id()).state());
+        ImportJobView done = awaitFinished(jobs, "ann", second.id());
+        assertEquals(State.DONE, done.state());
+        assertEquals(2, done.rowsImported());
+        awaitSpoolEmpty();
+    }
+
+    @Test
+    void jobsOfDifferentUsersRunInParallel() throws Exception {
+        CountDownLatch started = blockImports();
+        ImportJobService jobs = service(pool::execute, 3);
+
+        ImportJobView ann = jobs.submit("ann", Kind.USER_CSV, false, csv());
+        ImportJobView bob = jobs.submit("bob", Kind.USER_CSV, false, csv());
+
+        assertTrue(started.await(5, SECONDS));
+        assertEquals(State.RUNNING, awaitState(jobs, "ann", ann.id(), State.RUNNING));
+        assertEquals(State.RUNNING, awaitState(jobs, "bob", bob.id(), State.RUNNING));
+    }
+
+    @Test
+    void uploadsBeyondTheCapAreRefusedBeforeSpooling() throws Exception {
+        blockImports();
+        ImportJobService jobs = service(pool::execute, 2);
+
+        ImportJobView first = jobs.submit("ann", Kind.USER_CSV, false, csv());
+        ImportJobView second = jobs.submit("ann", Kind.USER_CSV, false, csv());
+        InputStream third = csv();
+        int available = third.available();
+
+        assertThrows(TooManyImportsException.class, () -> jobs.submit("ann", Kind.USER_CSV, false, third));
+        assertEquals(available, third.available(), "refused upload must not be read");
+        assertEquals(2, spoolFiles());
+        // лимит у каждого пользователя свой
+        jobs.submit("bob", Kind.USER_CSV, false, csv());
+
+        release.countDown();
+        awaitFinished(jobs, "ann", first.id());
+        awaitFinished(jobs, "ann", second.id());
+        // закончившиеся задачи освобождают место (сразу после того, как отметились завершёнными)
+        ImportJobView again = submitWhenFree(jobs, "ann");
+        assertEquals(State.DONE, awaitFinished(jobs, "ann", again.id()).state());
+    }
+
+    @Test
+    void rejectedJobFailsAndFreesItsSlot() throws Exception {
+        ImportJobService jobs = service(task -> {
+            throw new RejectedExecutionException("queue full");
+        }, 1);
+
+        for (int i = 0; i < 3; i++) {
+            ImportJobView job = jobs.submit("ann", Kind.USER_CSV, false, csv());
+            ImportJobView status = jobs.status("ann", job.id());
+            assertEquals(State.FAILED, status.state());
+            assertEquals("Import queue is full, try again later", status.message());
+        }
+        assertEquals(0, spoolFiles());
+        verify(importService, times(0)).importUserCsv(anyString(), any(), anyBoolean(), any());
+    }
+
+    @Test
+    void cancelledQueuedJobNeverRuns() throws Exception {
+        CountDownLatch started = blockImports();
+        ImportJobService jobs = service(pool::execute, 3);
+
+        ImportJobView first = jobs.submit("ann", Kind.USER_CSV, false, csv());
+        ImportJobView second = jobs.submit("ann", Kind.USER_CSV, false, csv());
+        assertTrue(started.await(5, SECONDS));
+        assertEquals(State.CANCELLED, jobs.cancel("ann", second.id()).state());
+
+        release.countDown();
+        assertEquals(State.DONE, awaitFinished(jobs, "ann", first.id()).state());
+        assertEquals(State.CANCELLED, awaitFinished(jobs, "ann", second.id()).state());
+        awaitSpoolEmpty();
+        verify(importService, times(1)).importUserCsv(anyString(), any(), anyBoolean(), any());
+    }
+
+    @Test
+    void failedImportKeepsItsMessage() throws Exception {
+        when(importService.importUserCsv(anyString(), any(), anyBoolean(), any()))
+                .thenThrow(new IllegalArgumentException("Category not found"));
+        ImportJobService jobs = service(pool::execute, 3);
+
+        ImportJobView job = jobs.submit("ann", Kind.USER_CSV, false, csv());
+        ImportJobView done = awaitFinished(jobs, "ann", job.id());
+        assertEquals(State.FAILED, done.state());
+        assertEquals("Category not found", done.message());
+    }
+
+    @Test
+    void jobsOfOtherUsersAreNotFound() throws Exception {
+        ImportJobService jobs = service(pool::execute, 3);
+        ImportJobView job = jobs.submit("ann", Kind.USER_CSV, false, csv());
+
+        assertThrows(IllegalArgumentException.class, () -> jobs.status("bob", job.id()));
+        assertThrows(IllegalArgumentException.class, () -> jobs.cancel("bob", job.id()));
+    }
+
+    /** Imports block until {@link #release}, then report two rows; the latch counts down when one starts. */
+    private CountDownLatch blockImports() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        when(importService.importUserCsv(anyString(), any(), anyBoolean(), any())).thenAnswer(inv -> {
+            started.countDown();
+            assertTrue(release.await(10, SECONDS));
+            ImportProgress progress = inv.getArgument(3);
+            progress.rowsImported(2);
+            return 2;
+        });
+        return started;
+    }
+
+    private ImportJobService service(TaskExecutor executor, int maxPendingPerUser) throws IOException {
+        return new ImportJobService(importService, executor, spool, Duration.ofHours(1), maxPendingPerUser);
+    }
+
+    private static InputStream csv() {
+        return new ByteArrayInputStream("""
+                type,amount,date,category,subcategory,note
+                EXPENSE,10.50,2024-01-01,Food,,lunch
+                INCOME,100,2024-01-02,Salary,,
+                """.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private long spoolFiles() throws IOException {
+        try (Stream<Path> files = Files.list(spool)) {
+            return files.count();
+        }
+    }
+
+    // файл удаляется сразу после того, как задача отметилась завершённой
+    private void awaitSpoolEmpty() throws Exception {
+        long deadline = System.nanoTime() + SECONDS.toNanos(5);
+        while (spoolFiles() > 0) {
+            assertTrue(System.nanoTime() < deadline, "spooled uploads were not deleted");
+            Thread.sleep(10);
+        }
+    }
+
+    private static ImportJobView awaitFinished(ImportJobService jobs, String owner, String id) throws Exception {
+        long deadline = System.nanoTime() + SECONDS.toNanos(5);
+        ImportJobView view;
+        while ((view = jobs.status(owner, id)).finishedAt() == null) {
+            assertTrue(System.nanoTime() < deadline, "job " + id + " did not finish");
+            Thread.sleep(10);
+        }
+        return view;
+    }
+
+    private static ImportJobView submitWhenFree(ImportJobService jobs, String owner) throws Exception {
+        long deadline = System.nanoTime() + SECONDS.toNanos(5);
+        while (true) {
+            try {
+                return jobs.submit(owner, Kind.USER_CSV, false, csv());
+            } catch (TooManyImportsException e) {
+                assertTrue(System.nanoTime() < deadline, "finished jobs still count against the limit");
+                Thread.sleep(10);
+            }
+        }
+    }
+
+    private static State awaitState(ImportJobService jobs, String owner, String id, State state) throws Exception {
+        long deadline = System.nanoTime() + SECONDS.toNanos(5);
+        State current;
+        while ((current = jobs.status(owner, id).state()) != state && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        return current;
+    }
+}
@@ -0,0 +1,134 @@
+package org.fin.walley.service;
+
+import org.fin.walley.domain.TransactionType;
+import org.fin.walley.repo.SyncRepository;
+import org.fin.walley.repo.SyncRepository.SyncState;
+import org.fin.walley.service.SyncService.Cursor;
+import org.fin.walley.view.SyncView;
+import org.fin.walley.view.SyncView.TransactionChange;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Sync tokens and the windowing of {@link SyncService#changes} over a mocked {@link SyncRepository}.
+ */
+class SyncServiceTest {
+
+    private static final Long USER = 3L;
+
+    private final SyncRepository repo = mock(SyncRepository.class);
+    private final SyncService service = new SyncService(repo, Duration.ofDays(90));
+
+    @Test
+    void tokensRoundTrip() {
+        Cursor done = Cursor.start(42, 42);
+        assertEquals("42", done.encode());
+        assertEquals(done, Cursor.parse("42"));
+        assertEquals(done, Cursor.parse(" 42 "));
+
+        Cursor paging = Cursor.start(7, 42).withTx(9, 1001).withDeleted(8, 55);
+        assertEquals("7:42:9:1001:8:55", paging.encode());
+        assertEquals(paging, Cursor.parse(paging.encode()));
+
+        Cursor snapshot = Cursor.start(-1, 42).withTx(40, 12);
+        assertEquals(snapshot, Cursor.parse(snapshot.encode()));
+    }
+
+    @Test
+    void missingTokenIsNoCursor() {
+        assertNull(Cursor.parse(null));
+        assertNull(Cursor.parse(" "));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"abc", "-1", "1:2", "1:2:3:4:5", "1:2:3:4:5:x", "1:2:3:4:5:6:7", "1.5"})
+    void malformedTokensAreRejected(String token) {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> Cursor.parse(token));
+        assertEquals("Invalid sync token", e.getMessage());
+        assertThrows(IllegalArgumentException.class, () -> service.changes(USER, token, 10));
+    }
+
+    @Test
+    void tokenOlderThanKeptTombstonesResets() {
+        // надгробия до ревизии 20 удалены, клиент остановился на 10
+        when(repo.state(USER)).thenReturn(new SyncState(50, 20));
+
+        SyncView page = service.changes(USER, "10", 100);
+
+        assertTrue(page.reset());
+        assertFalse(page.hasMore());
+        assertEquals("50", page.token());
+        verify(repo).transactions(USER, -1, 50, -1, 0, 101);
+        verify(repo).categories(USER, -1, 50);
+        verify(repo, never()).tombstones(eq(USER), anyLong(), anyLong(), anyLong(), anyLong(), anyInt());
+    }
+
+    @Test
+    void tokenFromTheFutureResets() {
+        when(repo.state(USER)).thenReturn(new SyncState(50, 0));
+
+        assertTrue(service.changes(USER, "60", 100).reset());
+    }
+
+    @Test
+    void currentTokenReadsNothing() {
+        when(repo.state(USER)).thenReturn(new SyncState(50, 20));
+
+        SyncView page = service.changes(USER, "50", 100);
+
+        assertFalse(page.reset());
+        assertFalse(page.hasMore());
+        assertEquals("50", page.token());
+        verify(repo, never()).transactions(eq(USER), anyLong(), anyLong(), anyLong(), anyLong(), anyInt());
+    }
+
+    @Test
+    void pagesPinTheWindowAndContinueAfterTheLastRow() {
+        when(repo.state(USER)).thenReturn(new SyncState(10, 0));
+        when(repo.transactions(USER, 4, 10, 4, 0, 3)).thenReturn(List.of(tx(100, 5), tx(101, 5), tx(102, 6)));
+
+        SyncView first = service.changes(USER, "4", 2);
+
+        assertFalse(first.reset());
+        assertTrue(first.hasMore());
+        assertEquals(2, first.transactions().size());
+        assertEquals("4:10:5:101:4:0", first.token());
+        verify(repo).categories(USER, 4, 10);
+
+        // пока клиент листает, пользователь успел что-то поменять: окно остаётся (4, 10]
+        when(repo.state(USER)).thenReturn(new SyncState(12, 0));
+        when(repo.transactions(USER, 4, 10, 5, 101, 3)).thenReturn(List.of(tx(102, 6)));
+
+        SyncView last = service.changes(USER, first.token(), 2);
+
+        assertFalse(last.hasMore());
+        assertEquals(List.of(tx(102, 6)), last.transactions());
+        assertEquals("10", last.token());
+        assertEquals(List.of(), last.categories());
+        verify(repo).categories(eq(USER), anyLong(), anyLong());
+    }
+
+    private static TransactionChange tx(long id, long revision) {
+        return new TransactionChange(id, TransactionType.EXPENSE, new BigDecimal("1.00"), LocalDate.of(2024, 1, 1),
+                1L, null, null, revision);
+    }
+}